@@ -0,0 +1,149 @@
+import com.google.gson.JsonObject;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Semaphore;
+
+public class ActionRegistry {
+    private final Map<String, Action<?>> actions = new HashMap<>();
+    private final List<Hook> hooks = new CopyOnWriteArrayList<>();
+
+    public interface Decoder<T> {
+        T decode(JsonObject data);
+    }
+
+    public interface Handler<T> {
+        void handle(T request, JsonObject data, JsonObject response) throws Exception;
+    }
+
+    public interface Hook {
+        void completed(String action, JsonObject response, long elapsedNanos);
+    }
+
+    public static class Action<T> {
+        private final String name;
+        private final Decoder<T> decoder;
+        private final Handler<T> handler;
+        private boolean readOnly;
+        private boolean locksUsers;
+        private boolean batchable = true;
+        private boolean cpuBound;
+        private Semaphore permits;
+        private String[] required = new String[0];
+
+        private Action(String name, Decoder<T> decoder, Handler<T> handler) {
+            this.name = name;
+            this.decoder = decoder;
+            this.handler = handler;
+        }
+
+        public Action<T> readOnly() {
+            this.readOnly = true;
+            return this;
+        }
+
+        public Action<T> locksUsers() {
+            this.locksUsers = true;
+            return this;
+        }
+
+        public Action<T> notBatchable() {
+            this.batchable = false;
+            return this;
+        }
+
+        public Action<T> maxConcurrent(int limit) {
+            this.permits = new Semaphore(limit);
+            return this;
+        }
+
+        public Action<T> cpuBound() {
+            this.cpuBound = true;
+            return this;
+        }
+
+        public Action<T> require(String... fields) {
+            this.required = fields;
+            return this;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public boolean isReadOnly() {
+            return readOnly;
+        }
+
+        public boolean isLockingUsers() {
+            return locksUsers;
+        }
+
+        public boolean isBatchable() {
+            return batchable;
+        }
+
+        public String missingField(JsonObject data) {
+            return ActionRegistry.missingField(data, required);
+        }
+
+        public void execute(JsonObject data, JsonObject response) throws Exception {
+            if (permits != null && !permits.tryAcquire()) {
+                response.addProperty("status", "error");
+                response.addProperty("message", "Server busy, try again later");
+                return;
+            }
+            try {
+                T request = decoder.decode(data);
+                if (cpuBound) {
+                    CpuPool.call(() -> {
+                        handler.handle(request, data, response);
+                        return null;
+                    });
+                } else {
+                    handler.handle(request, data, response);
+                }
+            } finally {
+                if (permits != null) {
+                    permits.release();
+                }
+            }
+        }
+    }
+
+    public <T> Action<T> register(String name, Decoder<T> decoder, Handler<T> handler) {
+        Action<T> action = new Action<>(name, decoder, handler);
+        if (actions.putIfAbsent(name, action) != null) {
+            throw new IllegalArgumentException("Action already registered: " + name);
+        }
+        return action;
+    }
+
+    public static String missingField(JsonObject data, String... fields) {
+        for (String field : fields) {
+            if (!data.has(field) || data.get(field).isJsonNull()) {
+                return field;
+            }
+        }
+        return null;
+    }
+
+    public Action<?> find(String name) {
+        return name != null ? actions.get(name) : null;
+    }
+
+    public void addHook(Hook hook) {
+        hooks.add(hook);
+    }
+
+    public void completed(String action, JsonObject response, long elapsedNanos) {
+        for (Hook hook : hooks) {
+            try {
+                hook.completed(action, response, elapsedNanos);
+            } catch (RuntimeException e) {
+                Log.warn("Error in action hook: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,213 @@
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonPrimitive;
+
+public class ActionRequests {
+    private ActionRequests() {
+    }
+
+    public static class None {
+        static final None INSTANCE = new None();
+
+        static None from(JsonObject data) {
+            return INSTANCE;
+        }
+    }
+
+    public static class UserRef {
+        String email;
+
+        static UserRef from(JsonObject data) {
+            UserRef request = new UserRef();
+            request.email = string(data, "email");
+            return request;
+        }
+    }
+
+    public static class Credentials {
+        String email;
+        String username;
+        String password;
+
+        static Credentials from(JsonObject data) {
+            Credentials request = new Credentials();
+            request.email = string(data, "email");
+            request.username = string(data, "username");
+            request.password = string(data, "password");
+            return request;
+        }
+    }
+
+    public static class MusicRef {
+        String email;
+        String musicName;
+
+        static MusicRef from(JsonObject data) {
+            MusicRef request = new MusicRef();
+            request.email = string(data, "email");
+            request.musicName = string(data, "music_name");
+            return request;
+        }
+    }
+
+    public static class Share {
+        String email;
+        String targetEmail;
+        String playlistName;
+        String musicName;
+
+        static Share from(JsonObject data) {
+            Share request = new Share();
+            request.email = string(data, "email");
+            request.targetEmail = string(data, "target_email");
+            request.playlistName = string(data, "playlist_name");
+            request.musicName = string(data, "music_name");
+            return request;
+        }
+    }
+
+    public static class LocalMusic {
+        String email;
+        String title;
+        String artist;
+        JsonElement file;
+        String cover;
+
+        static LocalMusic from(JsonObject data) {
+            LocalMusic request = new LocalMusic();
+            request.email = string(data, "email");
+            request.title = string(data, "title");
+            request.artist = string(data, "artist");
+            request.file = data.get("file");
+            request.cover = string(data, "cover");
+            return request;
+        }
+    }
+
+    public static class Download {
+        String name;
+        String email;
+
+        static Download from(JsonObject data) {
+            Download request = new Download();
+            request.name = string(data, "name");
+            request.email = string(data, "email");
+            return request;
+        }
+    }
+
+    public static class PlaylistRef {
+        String email;
+        String name;
+        String playlistName;
+        long musicId;
+
+        static PlaylistRef from(JsonObject data) {
+            PlaylistRef request = new PlaylistRef();
+            request.email = string(data, "email");
+            request.name = string(data, "name");
+            request.playlistName = string(data, "playlist_name");
+            request.musicId = longValue(data, "music_id");
+            return request;
+        }
+    }
+
+    public static class Sharing {
+        String email;
+        boolean allowSharing;
+
+        static Sharing from(JsonObject data) {
+            Sharing request = new Sharing();
+            request.email = string(data, "email");
+            JsonPrimitive allowSharing = primitive(data, "allow_sharing");
+            request.allowSharing = allowSharing != null && allowSharing.getAsBoolean();
+            return request;
+        }
+    }
+
+    public static class MusicById {
+        long id;
+        String email;
+
+        static MusicById from(JsonObject data) {
+            MusicById request = new MusicById();
+            request.id = longValue(data, "id");
+            request.email = string(data, "email");
+            return request;
+        }
+    }
+
+    public static class Search {
+        String query;
+        String email;
+        Integer limit;
+
+        static Search from(JsonObject data) {
+            Search request = new Search();
+            request.query = string(data, "query");
+            request.email = string(data, "email");
+            JsonPrimitive limit = primitive(data, "limit");
+            request.limit = limit != null ? (int) number(limit, "limit") : null;
+            return request;
+        }
+    }
+
+    public static class Sync {
+        String email;
+        long since;
+
+        static Sync from(JsonObject data) {
+            Sync request = new Sync();
+            request.email = string(data, "email");
+            request.since = longValue(data, "since");
+            return request;
+        }
+    }
+
+    public static class Batch {
+        JsonArray requests;
+
+        static Batch from(JsonObject data) {
+            Batch request = new Batch();
+            JsonElement requests = data.get("requests");
+            if (requests != null && !requests.isJsonNull()) {
+                if (!requests.isJsonArray()) {
+                    throw new JsonParseException("Field requests must be an array");
+                }
+                request.requests = requests.getAsJsonArray();
+            }
+            return request;
+        }
+    }
+
+    private static JsonPrimitive primitive(JsonObject data, String name) {
+        JsonElement value = data.get(name);
+        if (value == null || value.isJsonNull()) {
+            return null;
+        }
+        if (!value.isJsonPrimitive()) {
+            throw new JsonParseException("Field " + name + " must be a primitive value");
+        }
+        return value.getAsJsonPrimitive();
+    }
+
+    private static String string(JsonObject data, String name) {
+        JsonPrimitive value = primitive(data, name);
+        return value != null ? value.getAsString() : null;
+    }
+
+    private static long longValue(JsonObject data, String name) {
+        JsonPrimitive value = primitive(data, name);
+        return value != null ? number(value, name) : 0;
+    }
+
+    private static long number(JsonPrimitive value, String name) {
+        try {
+            return value.isNumber() ? value.getAsLong() : Long.parseLong(value.getAsString());
+        } catch (NumberFormatException e) {
+            throw new JsonParseException("Field " + name + " must be a number", e);
+        }
+    }
+}
@@ -1,37 +1,175 @@
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
 import java.io.*;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class ClientHandeler implements Runnable {
+    private static final ExecutorService requestExecutor = ServerConfig.isVirtualThreadMode()
+            ? Executors.newVirtualThreadPerTaskExecutor()
+            : Executors.newFixedThreadPool(ServerConfig.POOL_SIZE);
     private final Socket clientSocket;
     private final RequestHandeler requestHandeler;
+    private final Semaphore inFlight = new Semaphore(ServerConfig.MAX_IN_FLIGHT);
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private volatile boolean closed;
+    private ServerStats.CountingInputStream received;
+    private ServerStats.CountingOutputStream sent;
 
-    public ClientHandeler(Socket clientSocket) {
+    public ClientHandeler(Socket clientSocket, RequestHandeler requestHandeler) {
         this.clientSocket = clientSocket;
-        this.requestHandeler = new RequestHandeler();
+        this.requestHandeler = requestHandeler;
     }
 
     @Override
     public void run() {
         try (
-                BufferedReader in = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
-                BufferedWriter out = new BufferedWriter(new OutputStreamWriter(clientSocket.getOutputStream()))
+                DataInputStream in = new DataInputStream(received = new ServerStats.CountingInputStream(
+                        new BufferedInputStream(clientSocket.getInputStream())));
+                BufferedOutputStream out = new BufferedOutputStream(sent = new ServerStats.CountingOutputStream(clientSocket.getOutputStream()))
         ) {
-            String requestLine;
-            while ((requestLine = in.readLine()) != null) {
-                String response = requestHandeler.processRequest(requestLine);
-                out.write(response);
-                out.newLine();
-                out.flush();
+            boolean zeroCopy = clientSocket.getChannel() != null;
+            WritableByteChannel channel = zeroCopy ? clientSocket.getChannel() : Channels.newChannel(out);
+            Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            try {
+                while (!closed && awaitRequest(in)) {
+                    JsonObject request;
+                    long requestStart = received.getCount();
+                    try {
+                        request = JsonCodec.readRequest(in, requestHandeler.getUploadDir());
+                    } catch (JsonParseException e) {
+                        writeResponse(out, writer, requestHandeler.invalidRequest(e.getMessage()));
+                        continue;
+                    }
+                    String action = actionOf(request);
+                    long requestBytes = received.getCount() - requestStart;
+                    if (requestHandeler.isStreamingAction(request)) {
+                        inFlight.acquireUninterruptibly(ServerConfig.MAX_IN_FLIGHT);
+                        try {
+                            long start = System.nanoTime();
+                            long sentBefore = sent.getCount();
+                            JsonObject response = requestHandeler.processStreamingRequest(request, in, out, channel);
+                            long elapsed = System.nanoTime() - start;
+                            long streamedRequestBytes = received.getCount() - requestStart;
+                            long responseBytes = sent.getCount() - sentBefore + (zeroCopy ? streamedBytes(response) : 0);
+                            ServerStats.completed(action, response, elapsed);
+                            ServerStats.recordSizes(action, streamedRequestBytes, responseBytes);
+                            Log.access(action, response, elapsed, streamedRequestBytes, responseBytes);
+                        } finally {
+                            JsonCodec.deleteSpooled(request);
+                            inFlight.release(ServerConfig.MAX_IN_FLIGHT);
+                        }
+                        continue;
+                    }
+                    inFlight.acquireUninterruptibly();
+                    requestExecutor.execute(() -> {
+                        try {
+                            if (closed) {
+                                return;
+                            }
+                            long start = System.nanoTime();
+                            JsonObject response = requestHandeler.respond(request);
+                            long responseBytes = writeResponse(out, writer, response);
+                            ServerStats.recordSizes(action, requestBytes, responseBytes);
+                            Log.access(action, response, System.nanoTime() - start, requestBytes, responseBytes);
+                        } finally {
+                            JsonCodec.deleteSpooled(request);
+                            inFlight.release();
+                        }
+                    });
+                }
+            } finally {
+                inFlight.acquireUninterruptibly(ServerConfig.MAX_IN_FLIGHT);
+            }
+        } catch (SocketTimeoutException e) {
+            Log.info("Closing idle client: " + clientSocket.getInetAddress());
+        } catch (IOException | RuntimeException e) {
+            if (!closed) {
+                Log.error("Client connection error", e);
             }
-        } catch (IOException e) {
-            e.printStackTrace();
         } finally {
             try {
                 clientSocket.close();
-                System.out.println("Client disconnected: " + clientSocket.getInetAddress());
+                Log.info("Client disconnected: " + clientSocket.getInetAddress());
             } catch (IOException e) {
-                e.printStackTrace();
+                Log.warn("Error closing client: " + e.getMessage());
+            }
+        }
+    }
+
+    public static int getQueueDepth() {
+        return ServerStats.queueDepth(requestExecutor);
+    }
+
+    private static String actionOf(JsonObject request) {
+        JsonElement action = request.get("action");
+        return action != null && action.isJsonPrimitive() ? action.getAsString() : null;
+    }
+
+    private static long streamedBytes(JsonObject response) {
+        JsonElement data = response.get("data");
+        if (data == null || !data.isJsonObject() || !data.getAsJsonObject().has("length")) {
+            return 0;
+        }
+        return data.getAsJsonObject().get("length").getAsLong();
+    }
+
+    private long writeResponse(OutputStream out, Writer writer, JsonObject response) {
+        writeLock.lock();
+        try {
+            if (closed) {
+                return 0;
+            }
+            long before = sent.getCount();
+            try {
+                JsonCodec.write(response, writer);
+                writer.write('\n');
+                writer.flush();
+                out.flush();
+            } catch (IOException e) {
+                Log.warn("Error writing response, closing connection: " + e.getMessage());
+                close();
+            }
+            return sent.getCount() - before;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void close() {
+        closed = true;
+        try {
+            clientSocket.close();
+        } catch (IOException e) {
+            Log.warn("Error closing client: " + e.getMessage());
+        }
+    }
+
+    private boolean awaitRequest(InputStream in) throws IOException {
+        while (true) {
+            try {
+                in.mark(1);
+                int b = in.read();
+                if (b == -1) {
+                    return false;
+                }
+                if (b != '\n' && b != '\r') {
+                    in.reset();
+                    return true;
+                }
+            } catch (SocketTimeoutException e) {
+                if (inFlight.availablePermits() == ServerConfig.MAX_IN_FLIGHT) {
+                    throw e;
+                }
             }
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,119 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class CoverCache {
+    private static final long DEFAULT_MAX_BYTES = 32L * 1024 * 1024;
+    private final String coverDir;
+    private final long maxBytes;
+    private final Map<String, FileStamp> stamps = new ConcurrentHashMap<>();
+    private final LinkedHashMap<String, String> encodedByHash = new LinkedHashMap<>(64, 0.75f, true);
+    private long cachedBytes;
+
+    public static class Cover {
+        private final String hash;
+        private final String base64;
+
+        private Cover(String hash, String base64) {
+            this.hash = hash;
+            this.base64 = base64;
+        }
+
+        public String getHash() {
+            return hash;
+        }
+
+        public String getBase64() {
+            return base64;
+        }
+    }
+
+    private static class FileStamp {
+        private final long lastModified;
+        private final long length;
+        private final String hash;
+
+        private FileStamp(long lastModified, long length, String hash) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.hash = hash;
+        }
+    }
+
+    public CoverCache(String coverDir) {
+        this(coverDir, DEFAULT_MAX_BYTES);
+    }
+
+    public CoverCache(String coverDir, long maxBytes) {
+        this.coverDir = coverDir;
+        this.maxBytes = maxBytes;
+    }
+
+    public static String coverFileName(String title) {
+        return title + "-cover.jpg";
+    }
+
+    public Cover get(String title) throws IOException {
+        File coverFile = new File(coverDir + File.separator + coverFileName(title));
+        long lastModified = coverFile.lastModified();
+        if (lastModified == 0L) {
+            stamps.remove(coverFile.getPath());
+            return null;
+        }
+        long length = coverFile.length();
+        FileStamp stamp = stamps.get(coverFile.getPath());
+        if (stamp != null && stamp.lastModified == lastModified && stamp.length == length) {
+            String encoded = lookup(stamp.hash);
+            if (encoded != null) {
+                return new Cover(stamp.hash, encoded);
+            }
+        }
+        byte[] bytes = Files.readAllBytes(coverFile.toPath());
+        String hash = sha256(bytes);
+        String encoded = Base64.getEncoder().encodeToString(bytes);
+        stamps.put(coverFile.getPath(), new FileStamp(lastModified, length, hash));
+        store(hash, encoded);
+        return new Cover(hash, encoded);
+    }
+
+    public synchronized long getCachedBytes() {
+        return cachedBytes;
+    }
+
+    private synchronized String lookup(String hash) {
+        return encodedByHash.get(hash);
+    }
+
+    private synchronized void store(String hash, String encoded) {
+        if (encoded.length() > maxBytes) {
+            return;
+        }
+        String previous = encodedByHash.put(hash, encoded);
+        if (previous != null) {
+            cachedBytes -= previous.length();
+        }
+        cachedBytes += encoded.length();
+        Iterator<Map.Entry<String, String>> it = encodedByHash.entrySet().iterator();
+        while (cachedBytes > maxBytes && it.hasNext()) {
+            Map.Entry<String, String> eldest = it.next();
+            cachedBytes -= eldest.getValue().length();
+            it.remove();
+        }
+    }
+
+    private static String sha256(byte[] bytes) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
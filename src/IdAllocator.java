@@ -0,0 +1,79 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class IdAllocator {
+    private static final int BLOCK_SIZE = Integer.getInteger("ids.blockSize", 1000);
+    public static final IdAllocator MUSIC = new IdAllocator("music_last_id.txt");
+    public static final IdAllocator PLAYLIST = new IdAllocator("playlist_last_id.txt");
+    public static final IdAllocator USER = new IdAllocator("user_last_id.txt");
+
+    private final File file;
+    private final AtomicLong lastId;
+    private volatile long leasedUntil;
+
+    public IdAllocator(String filename) {
+        this.file = new File(filename);
+        this.leasedUntil = loadLease();
+        this.lastId = new AtomicLong(leasedUntil);
+    }
+
+    public long next() {
+        long id = lastId.incrementAndGet();
+        if (id > leasedUntil) {
+            extendLease(id);
+        }
+        return id;
+    }
+
+    public void advancePast(long id) {
+        lastId.accumulateAndGet(id, Math::max);
+        if (id > leasedUntil) {
+            extendLease(id);
+        }
+    }
+
+    private synchronized void extendLease(long id) {
+        if (id <= leasedUntil) {
+            return;
+        }
+        long lease = leasedUntil;
+        while (lease < id) {
+            lease += BLOCK_SIZE;
+        }
+        storeLease(lease);
+        leasedUntil = lease;
+    }
+
+    private long loadLease() {
+        try {
+            if (file.exists()) {
+                String line = Files.readString(file.toPath(), StandardCharsets.UTF_8).trim();
+                if (!line.isEmpty()) {
+                    return Long.parseLong(line);
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            Log.error("Error loading id lease from " + file + ": " + e.getMessage());
+        }
+        return 0;
+    }
+
+    private void storeLease(long lease) {
+        try {
+            File parentDir = file.getAbsoluteFile().getParentFile();
+            if (parentDir != null && !parentDir.exists()) {
+                parentDir.mkdirs();
+            }
+            Path temp = new File(file.getAbsolutePath() + ".tmp").toPath();
+            Files.writeString(temp, String.valueOf(lease), StandardCharsets.UTF_8);
+            Files.move(temp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot persist id lease to " + file + ": " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class IngestionPipeline {
+    private static final int WORKERS = Integer.getInteger("ingest.workers", 2);
+    private static final int QUEUE_SIZE = Integer.getInteger("ingest.queueSize", 256);
+    private static final long RETRY_DELAY_MS = Long.getLong("ingest.retryDelayMs", 5000);
+    private final UserManager userManager;
+    private final String musicDir;
+    private final AtomicInteger threadCount = new AtomicInteger();
+    private final ThreadPoolExecutor executor;
+    private final Set<Long> queued = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean retryScheduled = new AtomicBoolean();
+    private final ScheduledExecutorService retries = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ingest-retry");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public IngestionPipeline(UserManager userManager, String musicDir) {
+        this.userManager = userManager;
+        this.musicDir = musicDir;
+        this.executor = new ThreadPoolExecutor(WORKERS, WORKERS, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(QUEUE_SIZE),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "ingest-worker-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    public void submit(User owner, Music music) {
+        music.setMetadataPending(true);
+        if (!queued.add(music.getId())) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    enrich(owner, music);
+                } finally {
+                    queued.remove(music.getId());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            queued.remove(music.getId());
+            scheduleRetry();
+        }
+    }
+
+    private void scheduleRetry() {
+        if (retryScheduled.compareAndSet(false, true)) {
+            Log.warn("Ingestion queue full, retrying pending tracks in " + RETRY_DELAY_MS + " ms");
+            retries.schedule(() -> {
+                retryScheduled.set(false);
+                resumePending();
+            }, RETRY_DELAY_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public void resumePending() {
+        for (User user : userManager.getUsers()) {
+            for (Music music : user.getUserMusics()) {
+                if (music.isMetadataPending()) {
+                    submit(user, music);
+                }
+            }
+        }
+    }
+
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    private void enrich(User owner, Music music) {
+        String originalTitle = music.getTitle();
+        TrackMetadata metadata = MusicUtils.extractTrackMetadata(musicDir + File.separator + music.getFilePath());
+        if (!userManager.musicEnriched(owner, music, metadata)) {
+            return;
+        }
+        try {
+            publishCover(originalTitle, music.getTitle(), metadata.getAlbumImage());
+        } catch (IOException e) {
+            Log.warn("Error storing cover for music " + music.getTitle() + ": " + e.getMessage());
+        }
+    }
+
+    private void publishCover(String originalTitle, String title, byte[] albumImage) throws IOException {
+        File target = new File(musicDir + File.separator + CoverCache.coverFileName(title));
+        if (target.exists()) {
+            return;
+        }
+        File uploaded = new File(musicDir + File.separator + CoverCache.coverFileName(originalTitle));
+        if (uploaded.exists()) {
+            Files.copy(uploaded.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } else if (albumImage != null && albumImage.length > 0) {
+            Files.write(target.toPath(), albumImage);
+        }
+    }
+}
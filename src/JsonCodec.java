@@ -0,0 +1,458 @@
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.Strictness;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.google.gson.stream.MalformedJsonException;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Deque;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+public class JsonCodec {
+    private static final String FILE_REF = "$file:" + UUID.randomUUID();
+    private static final Set<String> SPOOLED_FIELDS = Set.of("file");
+    private static final int DECODE_CHUNK_CHARS = 64 * 1024;
+    private static final int KEY_CAPTURE_CHARS = 16;
+    private static final int ENCODE_CHUNK_BYTES = 48 * 1024;
+
+    private static class SpoolingReader extends Reader {
+        private final Reader in;
+        private final Path spoolDir;
+        private final Deque<Path> spooled = new ArrayDeque<>();
+        private final char[] buffer = new char[8192];
+        private final StringBuilder lastString = new StringBuilder();
+        private int position;
+        private int limit;
+        private int depth;
+        private int dataDepth = -1;
+        private char quote;
+        private boolean escaped;
+        private boolean expectValue;
+        private boolean closeSpooled;
+        private String key;
+
+        private SpoolingReader(Reader in, Path spoolDir) {
+            this.in = in;
+            this.spoolDir = spoolDir;
+        }
+
+        @Override
+        public int read(char[] out, int offset, int length) throws IOException {
+            int count = 0;
+            while (count < length) {
+                if (closeSpooled) {
+                    closeSpooled = false;
+                    out[offset + count++] = '"';
+                    continue;
+                }
+                if (position == limit) {
+                    if (count > 0) {
+                        break;
+                    }
+                    if (!fill()) {
+                        return -1;
+                    }
+                }
+                char c = buffer[position++];
+                if (quote == 0 && c == '"' && expectValue && depth == dataDepth && SPOOLED_FIELDS.contains(key)) {
+                    expectValue = false;
+                    spool();
+                    closeSpooled = true;
+                } else {
+                    track(c);
+                }
+                out[offset + count++] = c;
+            }
+            return count;
+        }
+
+        private boolean fill() throws IOException {
+            int n = in.read(buffer, 0, buffer.length);
+            if (n <= 0) {
+                return false;
+            }
+            position = 0;
+            limit = n;
+            return true;
+        }
+
+        private char next() throws IOException {
+            if (position == limit && !fill()) {
+                throw new EOFException("Unterminated string in field " + key);
+            }
+            return buffer[position++];
+        }
+
+        private void track(char c) {
+            if (quote != 0) {
+                if (escaped) {
+                    escaped = false;
+                } else if (c == '\\') {
+                    escaped = true;
+                } else if (c == quote) {
+                    quote = 0;
+                    return;
+                }
+                if (lastString.length() < KEY_CAPTURE_CHARS) {
+                    lastString.append(c);
+                }
+                return;
+            }
+            switch (c) {
+                case '"', '\'' -> {
+                    quote = c;
+                    lastString.setLength(0);
+                    expectValue = false;
+                }
+                case ':' -> {
+                    key = lastString.toString();
+                    expectValue = true;
+                }
+                case '{', '[' -> {
+                    depth++;
+                    if (c == '{' && expectValue && depth == 2 && "data".equals(key)) {
+                        dataDepth = depth;
+                    }
+                    expectValue = false;
+                }
+                case '}', ']' -> {
+                    if (depth == dataDepth) {
+                        dataDepth = -1;
+                    }
+                    depth--;
+                    expectValue = false;
+                }
+                case ' ', '\t', '\r', '\n' -> {
+                }
+                default -> expectValue = false;
+            }
+        }
+
+        private void spool() throws IOException {
+            Path file = Files.createTempFile(spoolDir, ".spool-", ".part");
+            spooled.add(file);
+            Base64.Decoder decoder = Base64.getDecoder();
+            byte[] chunk = new byte[DECODE_CHUNK_CHARS];
+            int length = 0;
+            try (OutputStream out = Files.newOutputStream(file)) {
+                while (true) {
+                    char c = next();
+                    if (c == '"') {
+                        break;
+                    }
+                    if (c == '\\') {
+                        c = unescape(next());
+                    }
+                    if (!isBase64(c)) {
+                        continue;
+                    }
+                    chunk[length++] = (byte) c;
+                    if (length == chunk.length) {
+                        out.write(decoder.decode(chunk));
+                        length = 0;
+                    }
+                }
+                if (length > 0) {
+                    out.write(decoder.decode(Arrays.copyOf(chunk, length)));
+                }
+            } catch (IllegalArgumentException e) {
+                throw new JsonParseException("Invalid base64 field: " + e.getMessage());
+            }
+        }
+
+        private char unescape(char c) throws IOException {
+            return switch (c) {
+                case 'n' -> '\n';
+                case 'r' -> '\r';
+                case 't' -> '\t';
+                case 'b' -> '\b';
+                case 'f' -> '\f';
+                case 'u' -> unicode();
+                default -> c;
+            };
+        }
+
+        private char unicode() throws IOException {
+            int value = 0;
+            for (int i = 0; i < 4; i++) {
+                int digit = Character.digit(next(), 16);
+                if (digit < 0) {
+                    throw new JsonParseException("Invalid unicode escape in field " + key);
+                }
+                value = value * 16 + digit;
+            }
+            return (char) value;
+        }
+
+        private static boolean isBase64(char c) {
+            return (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')
+                    || c == '+' || c == '/' || c == '=';
+        }
+
+        private Path claim() {
+            Path file = spooled.poll();
+            if (file == null) {
+                throw new JsonParseException("Field must be a double-quoted base64 string");
+            }
+            return file;
+        }
+
+        private void discardUnclaimed() {
+            for (Path file : spooled) {
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException e) {
+                    Log.warn("Error deleting spooled field: " + e.getMessage());
+                }
+            }
+            spooled.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    private static class LineInputStream extends InputStream {
+        private final InputStream in;
+        private boolean ended;
+        private boolean newline;
+
+        private LineInputStream(InputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (ended) {
+                return -1;
+            }
+            int b = in.read();
+            if (b == -1 || b == '\n') {
+                ended = true;
+                newline = b == '\n';
+                return -1;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (ended) {
+                return -1;
+            }
+            if (length == 0) {
+                return 0;
+            }
+            if (!in.markSupported()) {
+                int b = read();
+                if (b == -1) {
+                    return -1;
+                }
+                buffer[offset] = (byte) b;
+                return 1;
+            }
+            in.mark(length);
+            int n = in.read(buffer, offset, length);
+            if (n == -1) {
+                ended = true;
+                return -1;
+            }
+            for (int i = offset; i < offset + n; i++) {
+                if (buffer[i] == '\n') {
+                    in.reset();
+                    in.skipNBytes(i - offset + 1L);
+                    ended = true;
+                    newline = true;
+                    return i == offset ? -1 : i - offset;
+                }
+            }
+            return n;
+        }
+
+        private void drain() throws IOException {
+            while (read() != -1) {
+            }
+        }
+    }
+
+    public static JsonObject fileRef(Path path) {
+        JsonObject ref = new JsonObject();
+        ref.addProperty(FILE_REF, path.toString());
+        return ref;
+    }
+
+    public static Path fileOf(JsonElement element) {
+        if (element != null && element.isJsonObject() && element.getAsJsonObject().size() == 1
+                && element.getAsJsonObject().has(FILE_REF)) {
+            return Path.of(element.getAsJsonObject().get(FILE_REF).getAsString());
+        }
+        return null;
+    }
+
+    public static JsonObject readRequest(InputStream in, Path spoolDir) throws IOException {
+        LineInputStream line = new LineInputStream(in);
+        SpoolingReader spooling = new SpoolingReader(new InputStreamReader(line, StandardCharsets.UTF_8), spoolDir);
+        JsonReader reader = new JsonReader(spooling);
+        reader.setStrictness(Strictness.LENIENT);
+        JsonObject request = new JsonObject();
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (name.equals("data") && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                    request.add(name, readData(reader, spooling));
+                } else {
+                    request.add(name, JsonParser.parseReader(reader));
+                }
+            }
+            reader.endObject();
+            line.drain();
+            return request;
+        } catch (EOFException e) {
+            deleteSpooled(request);
+            spooling.discardUnclaimed();
+            if (!line.newline) {
+                throw e;
+            }
+            throw new JsonParseException("Incomplete request: " + e.getMessage());
+        } catch (MalformedJsonException | IllegalStateException | JsonParseException e) {
+            deleteSpooled(request);
+            spooling.discardUnclaimed();
+            line.drain();
+            throw new JsonParseException(e.getMessage(), e);
+        } catch (IOException e) {
+            deleteSpooled(request);
+            spooling.discardUnclaimed();
+            throw e;
+        }
+    }
+
+    private static JsonObject readData(JsonReader reader, SpoolingReader spooling) throws IOException {
+        JsonObject data = new JsonObject();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (SPOOLED_FIELDS.contains(name) && reader.peek() == JsonToken.STRING) {
+                reader.nextString();
+                data.add(name, fileRef(spooling.claim()));
+            } else {
+                data.add(name, JsonParser.parseReader(reader));
+            }
+        }
+        reader.endObject();
+        return data;
+    }
+
+    public static void deleteSpooled(JsonObject request) {
+        JsonElement data = request.get("data");
+        if (data == null || !data.isJsonObject()) {
+            return;
+        }
+        for (Map.Entry<String, JsonElement> field : data.getAsJsonObject().entrySet()) {
+            Path file = fileOf(field.getValue());
+            if (file != null) {
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException e) {
+                    Log.warn("Error deleting spooled field: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    public static String toJson(JsonElement element) {
+        StringWriter out = new StringWriter();
+        try {
+            write(element, out);
+        } catch (IOException e) {
+            throw new JsonParseException("Error writing response: " + e.getMessage(), e);
+        }
+        return out.toString();
+    }
+
+    public static void write(JsonElement element, Writer out) throws IOException {
+        JsonWriter writer = new JsonWriter(out);
+        writer.setStrictness(Strictness.LENIENT);
+        writer.setSerializeNulls(true);
+        writeElement(element, writer, out);
+        writer.flush();
+    }
+
+    private static void writeElement(JsonElement element, JsonWriter writer, Writer out) throws IOException {
+        Path file = fileOf(element);
+        if (file != null) {
+            writer.jsonValue("");
+            writer.flush();
+            out.write('"');
+            writeBase64(file, out);
+            out.write('"');
+        } else if (element == null || element.isJsonNull()) {
+            writer.nullValue();
+        } else if (element.isJsonArray()) {
+            writer.beginArray();
+            for (JsonElement item : (JsonArray) element) {
+                writeElement(item, writer, out);
+            }
+            writer.endArray();
+        } else if (element.isJsonObject()) {
+            writer.beginObject();
+            for (Map.Entry<String, JsonElement> field : element.getAsJsonObject().entrySet()) {
+                writer.name(field.getKey());
+                writeElement(field.getValue(), writer, out);
+            }
+            writer.endObject();
+        } else {
+            JsonPrimitive primitive = element.getAsJsonPrimitive();
+            if (primitive.isNumber()) {
+                writer.value(primitive.getAsNumber());
+            } else if (primitive.isBoolean()) {
+                writer.value(primitive.getAsBoolean());
+            } else {
+                writer.value(primitive.getAsString());
+            }
+        }
+    }
+
+    private static void writeBase64(Path file, Writer out) throws IOException {
+        Base64.Encoder encoder = Base64.getEncoder();
+        byte[] buffer = new byte[ENCODE_CHUNK_BYTES];
+        try (InputStream in = Files.newInputStream(file)) {
+            int filled = 0;
+            int n;
+            while ((n = in.read(buffer, filled, buffer.length - filled)) != -1) {
+                filled += n;
+                if (filled == buffer.length) {
+                    out.write(encoder.encodeToString(buffer));
+                    filled = 0;
+                }
+            }
+            if (filled > 0) {
+                byte[] tail = new byte[filled];
+                System.arraycopy(buffer, 0, tail, 0, filled);
+                out.write(encoder.encodeToString(tail));
+            }
+        }
+    }
+}
@@ -0,0 +1,228 @@
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.reflect.TypeToken;
+import java.io.*;
+import java.lang.reflect.Type;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+public class JsonStorage implements StorageBackend {
+    private static final int COMPACTION_THRESHOLD = 500;
+    private static final Gson gson = new Gson();
+    private final String musicFile;
+    private final String serverMusicFile;
+    private final String usersFile;
+    private final String tracksFile;
+    private final UserJournal userJournal;
+    private State state;
+
+    public JsonStorage(String dbDir) {
+        this.musicFile = dbDir + File.separator + "musics.json";
+        this.serverMusicFile = dbDir + File.separator + "server_musics.json";
+        this.usersFile = dbDir + File.separator + "users.json";
+        this.tracksFile = dbDir + File.separator + "tracks.json";
+        this.userJournal = new UserJournal(dbDir + File.separator + "users.log");
+    }
+
+    @Override
+    public synchronized void saveMusics(List<Music> musics) {
+        try {
+            writeAtomically(musicFile, musics);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot save musics: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public List<Music> loadMusics() {
+        return readMusics(musicFile, "musics");
+    }
+
+    @Override
+    public List<Music> loadServerMusics() {
+        return loadState().serverMusics;
+    }
+
+    static List<Music> readMusics(String file, String label) {
+        try (Reader reader = new FileReader(file)) {
+            Type musicListType = new TypeToken<List<Music>>(){}.getType();
+            List<Music> musics = gson.fromJson(reader, musicListType);
+            return musics != null ? musics : new ArrayList<>();
+        } catch (FileNotFoundException e) {
+            return new ArrayList<>();
+        } catch (IOException e) {
+            Log.error("Error loading " + label + ": " + e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+
+    @Override
+    public void saveUser(User user) {
+        saveUserBatch(List.of(user));
+    }
+
+    @Override
+    public void saveUserBatch(Collection<User> users) {
+        List<JsonObject> records = new ArrayList<>();
+        List<Music> tracks = UserCodec.takeDirtyTracks(users);
+        for (Music music : tracks) {
+            JsonObject record = new JsonObject();
+            record.addProperty("op", "track");
+            record.add("music", UserCodec.encodeTrack(music));
+            records.add(record);
+        }
+        for (User user : users) {
+            JsonObject record = new JsonObject();
+            record.addProperty("op", "put");
+            record.add("user", UserCodec.encodeUser(user));
+            records.add(record);
+        }
+        try {
+            userJournal.append(records);
+        } catch (RuntimeException e) {
+            UserCodec.restoreDirtyTracks(tracks);
+            throw e;
+        }
+    }
+
+    @Override
+    public void removeUser(User user) {
+        JsonObject record = new JsonObject();
+        record.addProperty("op", "delete");
+        record.addProperty("email", user.getEmail());
+        userJournal.append(List.of(record));
+    }
+
+    @Override
+    public boolean needsCompaction() {
+        return userJournal.getRecordCount() >= COMPACTION_THRESHOLD;
+    }
+
+    @Override
+    public void compactUsers(Supplier<List<User>> users) {
+        userJournal.compact(() -> writeUsersSnapshot(users.get()));
+    }
+
+    private synchronized void writeUsersSnapshot(List<User> users) throws IOException {
+        Map<Long, Music> snapshot = new LinkedHashMap<>();
+        for (Music music : loadState().serverMusics) {
+            snapshot.put(music.getId(), music);
+        }
+        for (Music music : UserCodec.referencedTracks(users)) {
+            snapshot.putIfAbsent(music.getId(), music);
+        }
+        JsonArray tracks = new JsonArray();
+        for (Music music : snapshot.values()) {
+            tracks.add(UserCodec.encodeTrack(music));
+        }
+        JsonArray records = new JsonArray();
+        for (User user : users) {
+            records.add(UserCodec.encodeUser(user));
+        }
+        writeAtomically(tracksFile, tracks);
+        writeAtomically(usersFile, records);
+    }
+
+    private static void writeAtomically(String file, Object json) throws IOException {
+        File temp = new File(file + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp);
+             Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))) {
+            gson.toJson(json, writer);
+            writer.flush();
+            out.getFD().sync();
+        }
+        File target = new File(file).getAbsoluteFile();
+        Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        try (FileChannel dir = FileChannel.open(target.getParentFile().toPath(), StandardOpenOption.READ)) {
+            dir.force(true);
+        }
+    }
+
+    public void close() {
+        userJournal.close();
+    }
+
+    @Override
+    public List<User> loadUsers() {
+        return loadState().users;
+    }
+
+    private synchronized State loadState() {
+        if (state != null) {
+            return state;
+        }
+        Map<Long, Music> tracks = new HashMap<>();
+        for (JsonElement track : readArray(tracksFile, "tracks")) {
+            Music music = UserCodec.decodeTrack(track);
+            tracks.put(music.getId(), music);
+        }
+        Map<Long, JsonObject> records = new LinkedHashMap<>();
+        for (JsonElement record : readArray(usersFile, "users")) {
+            records.put(record.getAsJsonObject().get("id").getAsLong(), record.getAsJsonObject());
+        }
+        userJournal.replay(record -> {
+            String op = record.get("op").getAsString();
+            if (op.equals("track")) {
+                Music music = UserCodec.decodeTrack(record.get("music"));
+                tracks.put(music.getId(), music);
+            } else if (op.equals("put")) {
+                JsonObject user = record.getAsJsonObject("user");
+                records.put(user.get("id").getAsLong(), user);
+            } else if (op.equals("delete")) {
+                String email = record.get("email").getAsString();
+                records.values().removeIf(u -> u.get("email").getAsString().equalsIgnoreCase(email));
+            }
+        });
+        state = new State(tracks, readMusics(serverMusicFile, "server musics"), records.values());
+        return state;
+    }
+
+    static class State {
+        final List<Music> serverMusics;
+        final List<User> users;
+
+        State(Map<Long, Music> tracks, List<Music> serverMusics, Collection<? extends JsonElement> records) {
+            this.serverMusics = new ArrayList<>(serverMusics.size());
+            for (Music music : serverMusics) {
+                Music stored = tracks.putIfAbsent(music.getId(), music);
+                this.serverMusics.add(stored != null ? stored : music);
+            }
+            UserCodec codec = new UserCodec(tracks);
+            this.users = new ArrayList<>(records.size());
+            for (JsonElement record : records) {
+                users.add(codec.decodeUser(record));
+            }
+        }
+    }
+
+    private static JsonArray readArray(String file, String label) {
+        try (Reader reader = new FileReader(file)) {
+            JsonElement json = JsonParser.parseReader(reader);
+            if (json.isJsonNull()) {
+                return new JsonArray();
+            }
+            if (!json.isJsonArray()) {
+                throw new JsonParseException("expected a JSON array");
+            }
+            return json.getAsJsonArray();
+        } catch (FileNotFoundException e) {
+            return new JsonArray();
+        } catch (IOException | JsonParseException e) {
+            throw new IllegalStateException("Cannot load " + label + " from " + file + ": " + e.getMessage(), e);
+        }
+    }
+}
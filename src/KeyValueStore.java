@@ -0,0 +1,362 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+public class KeyValueStore {
+    private static final int HEADER_BYTES = 8;
+    private static final int CHECKSUM_BYTES = 4;
+    private static final int TOMBSTONE = -1;
+    private static final int BATCH = -2;
+    private static final long MIN_COMPACTION_BYTES = 1024 * 1024;
+    private final Path path;
+    private final TreeMap<String, Location> index = new TreeMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private FileChannel channel;
+    private volatile MappedByteBuffer mapped;
+    private long size;
+    private long liveBytes;
+
+    private static class Location {
+        private final long offset;
+        private final int keyLength;
+        private final int valueLength;
+
+        private Location(long offset, int keyLength, int valueLength) {
+            this.offset = offset;
+            this.keyLength = keyLength;
+            this.valueLength = valueLength;
+        }
+
+        private long valueOffset() {
+            return offset + HEADER_BYTES + keyLength;
+        }
+
+        private long recordLength() {
+            return (long) HEADER_BYTES + keyLength + Math.max(valueLength, 0) + CHECKSUM_BYTES;
+        }
+    }
+
+    public KeyValueStore(String file) {
+        this.path = new File(file).toPath();
+        try {
+            open();
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot open store " + path + ": " + e.getMessage(), e);
+        }
+    }
+
+    public byte[] get(String key) {
+        lock.readLock().lock();
+        try {
+            Location location = index.get(key);
+            if (location == null) {
+                return null;
+            }
+            return readValue(key, location);
+        } catch (IOException e) {
+            Log.error("Error reading " + key + " from store: " + e.getMessage());
+            return null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<String> keys(String prefix) {
+        lock.readLock().lock();
+        try {
+            return new ArrayList<>(index.subMap(prefix, true, prefix + Character.MAX_VALUE, true).keySet());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean isEmpty() {
+        lock.readLock().lock();
+        try {
+            return index.isEmpty();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void put(String key, byte[] value) {
+        Map<String, byte[]> records = new TreeMap<>();
+        records.put(key, value);
+        putAll(records);
+    }
+
+    public void delete(String key) {
+        Map<String, byte[]> records = new TreeMap<>();
+        records.put(key, null);
+        putAll(records);
+    }
+
+    public void putAll(Map<String, byte[]> records) {
+        ByteBuffer buffer = encode(records);
+        lock.writeLock().lock();
+        try {
+            long position = size;
+            try {
+                while (buffer.hasRemaining()) {
+                    position += channel.write(buffer, position);
+                }
+                channel.force(false);
+            } catch (IOException e) {
+                channel.truncate(size);
+                throw e;
+            }
+            long offset = records.size() > 1 ? size + HEADER_BYTES : size;
+            for (Map.Entry<String, byte[]> record : records.entrySet()) {
+                int keyLength = record.getKey().getBytes(StandardCharsets.UTF_8).length;
+                int valueLength = record.getValue() != null ? record.getValue().length : TOMBSTONE;
+                Location location = new Location(offset, keyLength, valueLength);
+                track(record.getKey(), location);
+                offset += location.recordLength();
+            }
+            size = position;
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot write to store " + path + ": " + e.getMessage(), e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean needsCompaction() {
+        lock.readLock().lock();
+        try {
+            return size > MIN_COMPACTION_BYTES && size > liveBytes * 2;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void compact() {
+        Path temp = new File(path + ".compact").toPath();
+        lock.writeLock().lock();
+        try {
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                for (Map.Entry<String, Location> entry : index.entrySet()) {
+                    Map<String, byte[]> record = new TreeMap<>();
+                    record.put(entry.getKey(), readValue(entry.getKey(), entry.getValue()));
+                    ByteBuffer buffer = encode(record);
+                    while (buffer.hasRemaining()) {
+                        out.write(buffer);
+                    }
+                }
+                out.force(true);
+            }
+            channel.close();
+            mapped = null;
+            try {
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                open();
+            }
+        } catch (IOException e) {
+            try {
+                Files.deleteIfExists(temp);
+                if (!channel.isOpen()) {
+                    open();
+                }
+            } catch (IOException reopen) {
+                e.addSuppressed(reopen);
+            }
+            throw new IllegalStateException("Cannot compact store " + path + ": " + e.getMessage(), e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void open() throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        mapped = null;
+        index.clear();
+        liveBytes = 0;
+        long fileSize = channel.size();
+        long offset = 0;
+        while (offset + HEADER_BYTES <= fileSize) {
+            long next = replay(offset, fileSize);
+            if (next < 0) {
+                break;
+            }
+            offset = next;
+        }
+        if (offset < fileSize) {
+            Log.warn("Truncating torn store tail at offset " + offset);
+            mapped = null;
+            channel.truncate(offset);
+        }
+        size = offset;
+    }
+
+    private long replay(long offset, long fileSize) throws IOException {
+        ByteBuffer header = readHeader(offset);
+        if (header.getInt() != BATCH) {
+            Map.Entry<String, Location> record = readRecord(offset, fileSize);
+            if (record == null) {
+                return -1;
+            }
+            track(record.getKey(), record.getValue());
+            return offset + record.getValue().recordLength();
+        }
+        int batchLength = header.getInt();
+        long end = offset + HEADER_BYTES + batchLength;
+        if (batchLength <= 0 || end > fileSize) {
+            return -1;
+        }
+        List<Map.Entry<String, Location>> batch = new ArrayList<>();
+        long position = offset + HEADER_BYTES;
+        while (position < end) {
+            Map.Entry<String, Location> record = readRecord(position, end);
+            if (record == null) {
+                return -1;
+            }
+            batch.add(record);
+            position += record.getValue().recordLength();
+        }
+        for (Map.Entry<String, Location> record : batch) {
+            track(record.getKey(), record.getValue());
+        }
+        return end;
+    }
+
+    private Map.Entry<String, Location> readRecord(long offset, long limit) throws IOException {
+        if (offset + HEADER_BYTES > limit) {
+            return null;
+        }
+        ByteBuffer header = readHeader(offset);
+        int keyLength = header.getInt();
+        int valueLength = header.getInt();
+        if (keyLength <= 0 || valueLength < TOMBSTONE) {
+            return null;
+        }
+        Location location = new Location(offset, keyLength, valueLength);
+        if (offset + location.recordLength() > limit) {
+            return null;
+        }
+        String key = readKey(location);
+        try {
+            readValue(key, location);
+        } catch (IOException e) {
+            return null;
+        }
+        return new AbstractMap.SimpleEntry<>(key, location);
+    }
+
+    private ByteBuffer readHeader(long offset) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        while (header.hasRemaining()) {
+            if (channel.read(header, offset + header.position()) < 0) {
+                throw new IOException("unexpected end of store");
+            }
+        }
+        header.flip();
+        return header;
+    }
+
+    private String readKey(Location location) throws IOException {
+        ByteBuffer key = ByteBuffer.allocate(location.keyLength);
+        while (key.hasRemaining()) {
+            if (channel.read(key, location.offset + HEADER_BYTES + key.position()) < 0) {
+                throw new IOException("unexpected end of store");
+            }
+        }
+        return new String(key.array(), StandardCharsets.UTF_8);
+    }
+
+    private void track(String key, Location location) {
+        Location previous = location.valueLength == TOMBSTONE ? index.remove(key) : index.put(key, location);
+        if (previous != null) {
+            liveBytes -= previous.recordLength();
+        }
+        if (location.valueLength != TOMBSTONE) {
+            liveBytes += location.recordLength();
+        }
+    }
+
+    private byte[] readValue(String key, Location location) throws IOException {
+        byte[] value = new byte[Math.max(location.valueLength, 0)];
+        ByteBuffer trailer = ByteBuffer.allocate(CHECKSUM_BYTES);
+        long end = location.valueOffset() + value.length + CHECKSUM_BYTES;
+        MappedByteBuffer view = mapFor(end);
+        if (view != null) {
+            ByteBuffer slice = view.duplicate();
+            slice.position((int) location.valueOffset());
+            slice.get(value);
+            trailer.putInt(slice.getInt());
+            trailer.flip();
+        } else {
+            channel.read(ByteBuffer.wrap(value), location.valueOffset());
+            channel.read(trailer, location.valueOffset() + value.length);
+            trailer.flip();
+        }
+        CRC32 crc = new CRC32();
+        crc.update(key.getBytes(StandardCharsets.UTF_8));
+        crc.update(value);
+        if ((int) crc.getValue() != trailer.getInt()) {
+            throw new IOException("checksum mismatch");
+        }
+        return value;
+    }
+
+    private MappedByteBuffer mapFor(long end) throws IOException {
+        if (end > Integer.MAX_VALUE) {
+            return null;
+        }
+        MappedByteBuffer current = mapped;
+        if (current == null || current.capacity() < end) {
+            synchronized (this) {
+                current = mapped;
+                if (current == null || current.capacity() < end) {
+                    current = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(channel.size(), Integer.MAX_VALUE));
+                    mapped = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    private static ByteBuffer encode(Map<String, byte[]> records) {
+        int total = 0;
+        for (Map.Entry<String, byte[]> record : records.entrySet()) {
+            total += HEADER_BYTES + record.getKey().getBytes(StandardCharsets.UTF_8).length
+                    + (record.getValue() != null ? record.getValue().length : 0) + CHECKSUM_BYTES;
+        }
+        boolean batched = records.size() > 1;
+        ByteBuffer buffer = ByteBuffer.allocate(batched ? total + HEADER_BYTES : total);
+        if (batched) {
+            buffer.putInt(BATCH);
+            buffer.putInt(total);
+        }
+        for (Map.Entry<String, byte[]> record : records.entrySet()) {
+            byte[] key = record.getKey().getBytes(StandardCharsets.UTF_8);
+            byte[] value = record.getValue() != null ? record.getValue() : new byte[0];
+            CRC32 crc = new CRC32();
+            crc.update(key);
+            crc.update(value);
+            buffer.putInt(key.length);
+            buffer.putInt(record.getValue() != null ? value.length : TOMBSTONE);
+            buffer.put(key);
+            buffer.put(value);
+            buffer.putInt((int) crc.getValue());
+        }
+        buffer.flip();
+        return buffer;
+    }
+}
@@ -0,0 +1,178 @@
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+
+/**
+ * Log-structured replacement for the JSON files, selected with {@code -Ddb.engine=keyed}.
+ * Each user, music and track is its own record in {@link KeyValueStore}, so a save appends one
+ * record instead of rewriting a whole file. Loading is not lazy: every record is still read into
+ * memory at startup, exactly as with {@link JsonStorage}.
+ */
+public class KeyedStorage implements StorageBackend {
+    private static final String USERS = "users/";
+    private static final String MUSICS = "musics/";
+    private static final String TRACKS = "tracks/";
+    private static final String MIGRATED = "meta/migrated";
+    private static final Gson gson = new Gson();
+    private final String serverMusicFile;
+    private final KeyValueStore store;
+    private JsonStorage.State state;
+
+    public KeyedStorage(String dbDir) {
+        this.serverMusicFile = dbDir + File.separator + "server_musics.json";
+        this.store = new KeyValueStore(dbDir + File.separator + "store.kv");
+        if (store.get(MIGRATED) == null) {
+            Map<String, byte[]> records = new TreeMap<>();
+            if (store.isEmpty()) {
+                JsonStorage json = new JsonStorage(dbDir);
+                try {
+                    importJson(json, records);
+                } finally {
+                    json.close();
+                }
+            }
+            records.put(MIGRATED, encode(System.currentTimeMillis()));
+            store.putAll(records);
+        }
+    }
+
+    private void importJson(JsonStorage json, Map<String, byte[]> records) {
+        List<User> users = json.loadUsers();
+        List<Music> musics = json.loadMusics();
+        if (users.isEmpty() && musics.isEmpty()) {
+            return;
+        }
+        Log.info("Importing " + users.size() + " users and " + musics.size() + " musics into keyed store");
+        for (Music music : UserCodec.referencedTracks(users)) {
+            records.put(key(TRACKS, music.getId()), encode(UserCodec.encodeTrack(music)));
+        }
+        for (User user : users) {
+            records.put(key(USERS, user.getId()), encode(UserCodec.encodeUser(user)));
+        }
+        for (Music music : musics) {
+            records.put(key(MUSICS, music.getId()), encode(music));
+        }
+    }
+
+    private static String key(String prefix, long id) {
+        return prefix + String.format("%019d", id);
+    }
+
+    private static byte[] encode(Object value) {
+        return gson.toJson(value).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private List<JsonElement> loadAll(String prefix) {
+        List<JsonElement> values = new ArrayList<>();
+        for (String key : store.keys(prefix)) {
+            byte[] value = store.get(key);
+            if (value != null) {
+                values.add(JsonParser.parseString(new String(value, StandardCharsets.UTF_8)));
+            }
+        }
+        return values;
+    }
+
+    private synchronized JsonStorage.State loadState() {
+        if (state == null) {
+            Map<Long, Music> tracks = new HashMap<>();
+            for (JsonElement track : loadAll(TRACKS)) {
+                Music music = UserCodec.decodeTrack(track);
+                tracks.put(music.getId(), music);
+            }
+            state = new JsonStorage.State(tracks, JsonStorage.readMusics(serverMusicFile, "server musics"), loadAll(USERS));
+        }
+        return state;
+    }
+
+    @Override
+    public List<Music> loadMusics() {
+        List<Music> musics = new ArrayList<>();
+        for (JsonElement music : loadAll(MUSICS)) {
+            musics.add(gson.fromJson(music, Music.class));
+        }
+        return musics;
+    }
+
+    @Override
+    public void saveMusics(List<Music> musics) {
+        Map<String, byte[]> records = new TreeMap<>();
+        for (String key : store.keys(MUSICS)) {
+            records.put(key, null);
+        }
+        for (Music music : musics) {
+            records.put(key(MUSICS, music.getId()), encode(music));
+        }
+        store.putAll(records);
+    }
+
+    @Override
+    public List<Music> loadServerMusics() {
+        return loadState().serverMusics;
+    }
+
+    @Override
+    public List<User> loadUsers() {
+        return loadState().users;
+    }
+
+    @Override
+    public void saveUser(User user) {
+        saveUserBatch(List.of(user));
+    }
+
+    @Override
+    public void saveUserBatch(Collection<User> users) {
+        Map<String, byte[]> records = new TreeMap<>();
+        List<Music> tracks = UserCodec.takeDirtyTracks(users);
+        for (Music music : tracks) {
+            records.put(key(TRACKS, music.getId()), encode(UserCodec.encodeTrack(music)));
+        }
+        for (User user : users) {
+            records.put(key(USERS, user.getId()), encode(UserCodec.encodeUser(user)));
+        }
+        try {
+            store.putAll(records);
+        } catch (RuntimeException e) {
+            UserCodec.restoreDirtyTracks(tracks);
+            throw e;
+        }
+    }
+
+    @Override
+    public void removeUser(User user) {
+        store.delete(key(USERS, user.getId()));
+    }
+
+    @Override
+    public boolean needsCompaction() {
+        return store.needsCompaction();
+    }
+
+    @Override
+    public void compactUsers(Supplier<List<User>> users) {
+        Map<String, byte[]> orphans = new TreeMap<>();
+        for (String key : store.keys(TRACKS)) {
+            orphans.put(key, null);
+        }
+        for (Music music : loadState().serverMusics) {
+            orphans.remove(key(TRACKS, music.getId()));
+        }
+        for (Music music : UserCodec.referencedTracks(users.get())) {
+            orphans.remove(key(TRACKS, music.getId()));
+        }
+        if (!orphans.isEmpty()) {
+            store.putAll(orphans);
+        }
+        store.compact();
+    }
+}
@@ -0,0 +1,157 @@
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class Log {
+    public enum Level { DEBUG, INFO, WARN, ERROR, OFF }
+
+    private static final Level level = parseLevel(System.getProperty("log.level", "INFO"));
+    private static final int MAX_LINE_CHARS = Integer.getInteger("log.maxLineChars", 2048);
+    private static final int BUFFER_SIZE = Integer.getInteger("log.bufferSize", 8192);
+    private static final int ACCESS_SAMPLE = Integer.getInteger("log.accessSample", 1);
+    private static final int DRAIN_BATCH = 512;
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS")
+            .withZone(ZoneId.systemDefault());
+    private static final BlockingQueue<Entry> buffer = new ArrayBlockingQueue<>(BUFFER_SIZE);
+    private static final AtomicLong dropped = new AtomicLong();
+    private static final AtomicLong accessCount = new AtomicLong();
+
+    private static class Entry {
+        private final long time = System.currentTimeMillis();
+        private final Level level;
+        private final String message;
+
+        private Entry(Level level, String message) {
+            this.level = level;
+            this.message = message;
+        }
+    }
+
+    static {
+        Thread writer = new Thread(Log::drainForever, "log-writer");
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(Log::drainNow, "log-flush"));
+    }
+
+    private Log() {
+    }
+
+    private static Level parseLevel(String name) {
+        try {
+            return Level.valueOf(name.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return Level.INFO;
+        }
+    }
+
+    public static boolean isEnabled(Level messageLevel) {
+        return messageLevel.compareTo(level) >= 0 && messageLevel != Level.OFF;
+    }
+
+    public static void debug(String message) {
+        log(Level.DEBUG, message);
+    }
+
+    public static void info(String message) {
+        log(Level.INFO, message);
+    }
+
+    public static void warn(String message) {
+        log(Level.WARN, message);
+    }
+
+    public static void error(String message) {
+        log(Level.ERROR, message);
+    }
+
+    public static void error(String message, Throwable error) {
+        if (isEnabled(Level.ERROR)) {
+            StringWriter trace = new StringWriter();
+            error.printStackTrace(new PrintWriter(trace));
+            enqueue(Level.ERROR, message + ": " + trace);
+        }
+    }
+
+    public static void access(String action, JsonObject response, long elapsedNanos, long requestBytes, long responseBytes) {
+        if (ACCESS_SAMPLE <= 0 || !isEnabled(Level.INFO) || accessCount.getAndIncrement() % ACCESS_SAMPLE != 0) {
+            return;
+        }
+        enqueue(Level.INFO, "access action=" + action
+                + " requestId=" + field(response, "requestId")
+                + " status=" + field(response, "status")
+                + " latencyUs=" + elapsedNanos / 1000
+                + " requestBytes=" + requestBytes
+                + " responseBytes=" + responseBytes);
+    }
+
+    private static String field(JsonObject response, String name) {
+        JsonElement value = response.get(name);
+        return value != null && value.isJsonPrimitive() ? value.getAsString() : "-";
+    }
+
+    private static void log(Level messageLevel, String message) {
+        if (isEnabled(messageLevel)) {
+            enqueue(messageLevel, message);
+        }
+    }
+
+    private static void enqueue(Level messageLevel, String message) {
+        if (message.length() > MAX_LINE_CHARS) {
+            message = message.substring(0, MAX_LINE_CHARS) + "... (" + message.length() + " chars)";
+        }
+        if (!buffer.offer(new Entry(messageLevel, message))) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    private static void drainForever() {
+        List<Entry> batch = new ArrayList<>(DRAIN_BATCH);
+        while (true) {
+            try {
+                batch.add(buffer.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            buffer.drainTo(batch, DRAIN_BATCH - 1);
+            write(batch);
+            batch.clear();
+        }
+    }
+
+    private static synchronized void drainNow() {
+        List<Entry> batch = new ArrayList<>();
+        buffer.drainTo(batch);
+        write(batch);
+    }
+
+    private static String label(Level entryLevel) {
+        String name = entryLevel.name();
+        return name.length() < 5 ? name + " " : name;
+    }
+
+    private static synchronized void write(List<Entry> batch) {
+        StringBuilder out = new StringBuilder();
+        long lost = dropped.getAndSet(0);
+        if (lost > 0) {
+            out.append(TIME_FORMAT.format(Instant.now())).append(" WARN  dropped ").append(lost).append(" log lines\n");
+        }
+        for (Entry entry : batch) {
+            out.append(TIME_FORMAT.format(Instant.ofEpochMilli(entry.time))).append(' ')
+                    .append(label(entry.level)).append(' ')
+                    .append(entry.message).append('\n');
+        }
+        System.out.print(out);
+        System.out.flush();
+    }
+}
@@ -1,19 +1,29 @@
 import java.io.*;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class Music implements Serializable {
-    private static long lastId = loadLastId("music_last_id.txt");
     private final long id;
-    private final String title;
-    private final String artist;
+    private volatile String title;
+    private volatile String artist;
     private final String filePath;
     private final String uploaderEmail;
     private int likes;
+    private long durationSeconds;
+    private int bitrate;
+    private volatile boolean metadataPending;
+    private transient volatile boolean dirty = true;
+    private static final Set<Music> dirtyTracks = ConcurrentHashMap.newKeySet();
 
     public Music(String title, String artist, String filePath, String uploaderEmail) {
-        this.id = ++lastId;
-        saveLastId("music_last_id.txt", lastId);
-        String[] metadata = MusicUtils.extractMetaData(filePath);
+        this(title, artist, filePath, uploaderEmail, true);
+    }
+
+    public Music(String title, String artist, String filePath, String uploaderEmail, boolean extractMetadata) {
+        this.id = IdAllocator.MUSIC.next();
+        String[] metadata = extractMetadata ? MusicUtils.extractMetaData(filePath) : new String[] { null, null };
         this.title = (metadata[0] != null && !metadata[0].trim().isEmpty()) ? metadata[0].trim() : title.trim();
         this.artist = (metadata[1] != null && !metadata[1].trim().isEmpty()) ? metadata[1].trim() : artist.trim();
         this.filePath = filePath;
@@ -21,55 +31,72 @@ public class Music implements Serializable {
         this.likes = 0;
     }
 
-    public void addLike() {
-        this.likes++;
+    public synchronized void applyMetadata(TrackMetadata metadata) {
+        if (metadata.getTitle() != null && !metadata.getTitle().trim().isEmpty()) {
+            this.title = metadata.getTitle().trim();
+        }
+        if (metadata.getArtist() != null && !metadata.getArtist().trim().isEmpty()) {
+            this.artist = metadata.getArtist().trim();
+        }
+        this.durationSeconds = metadata.getDurationSeconds();
+        this.bitrate = metadata.getBitrate();
+        this.metadataPending = false;
+        markDirty();
     }
 
-    public void removeLike() {
-        if (this.likes > 0) {
-            this.likes--;
-        }
+    public synchronized void setMetadataPending(boolean metadataPending) {
+        this.metadataPending = metadataPending;
+        markDirty();
     }
 
-    public int getLikes() {
-        return likes;
+    public synchronized void markDirty() {
+        dirty = true;
+        dirtyTracks.add(this);
     }
 
-    private static long loadLastId(String filename) {
-        try {
-            File file = new File(filename);
-            if (file.exists()) {
-                BufferedReader reader = new BufferedReader(new FileReader(file));
-                String line = reader.readLine();
-                reader.close();
-                if (line != null && !line.trim().isEmpty()) {
-                    return Long.parseLong(line.trim());
-                }
-            }
-            System.out.println("No previous lastId found, starting from 0");
-            return 0;
-        } catch (IOException | NumberFormatException e) {
-            System.err.println("Error loading last ID: " + e.getMessage());
-            return 0;
+    public static List<Music> drainDirtyTracks() {
+        List<Music> drained = new ArrayList<>();
+        for (Music music : dirtyTracks) {
+            dirtyTracks.remove(music);
+            drained.add(music);
         }
+        return drained;
+    }
+
+    public synchronized boolean takeDirty() {
+        boolean wasDirty = dirty;
+        dirty = false;
+        return wasDirty;
+    }
+
+    public boolean isMetadataPending() {
+        return metadataPending;
     }
 
-    private static void saveLastId(String filename, long id) {
-        try {
-            File file = new File(filename);
-            File parentDir = file.getParentFile();
-            if (parentDir != null && !parentDir.exists()) {
-                parentDir.mkdirs();
-            }
-            BufferedWriter writer = new BufferedWriter(new FileWriter(file));
-            writer.write(String.valueOf(id));
-            writer.close();
-            System.out.println("Saved lastId: " + id);
-        } catch (IOException e) {
-            System.err.println("Error saving last ID: " + e.getMessage());
+    public synchronized long getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    public synchronized int getBitrate() {
+        return bitrate;
+    }
+
+    public synchronized void addLike() {
+        this.likes++;
+        markDirty();
+    }
+
+    public synchronized void removeLike() {
+        if (this.likes > 0) {
+            this.likes--;
+            markDirty();
         }
     }
 
+    public synchronized int getLikes() {
+        return likes;
+    }
+
     public long getId() {
         return id;
     }
@@ -0,0 +1,79 @@
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+public class MusicCatalog {
+    private final LongHashMap<Entry> entries = new LongHashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public static class Entry {
+        private final Music music;
+        private final List<User> holders = new CopyOnWriteArrayList<>();
+
+        private Entry(Music music) {
+            this.music = music;
+        }
+
+        public Music getMusic() {
+            return music;
+        }
+
+        public boolean isHeldBy(User user) {
+            return holders.contains(user);
+        }
+
+        public boolean isVisibleTo(User user) {
+            for (User holder : holders) {
+                if (holder == user || holder.isAllowSharing()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    public Entry add(Music music, User holder) {
+        lock.writeLock().lock();
+        try {
+            Entry entry = entries.get(music.getId());
+            if (entry == null) {
+                entry = new Entry(music);
+                entries.put(music.getId(), entry);
+            }
+            if (!entry.holders.contains(holder)) {
+                entry.holders.add(holder);
+            }
+            return entry;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean removeHolder(long musicId, User holder) {
+        lock.writeLock().lock();
+        try {
+            Entry entry = entries.get(musicId);
+            if (entry == null) {
+                return false;
+            }
+            entry.holders.remove(holder);
+            if (entry.holders.isEmpty()) {
+                entries.remove(musicId);
+                return true;
+            }
+            return false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public Entry find(long musicId) {
+        lock.readLock().lock();
+        try {
+            return entries.get(musicId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+public class MusicIndex {
+    private final LongHashMap<Music> byId = new LongHashMap<>();
+    private final Map<String, List<Music>> byTitle = new HashMap<>();
+
+    public MusicIndex(Collection<Music> musics) {
+        for (Music music : musics) {
+            index(music);
+        }
+    }
+
+    public static String normalizeTitle(String title) {
+        return title == null ? "" : title.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private void index(Music music) {
+        Music previous = byId.put(music.getId(), music);
+        if (previous != null) {
+            removeTitle(previous);
+        }
+        byTitle.computeIfAbsent(normalizeTitle(music.getTitle()), k -> new ArrayList<>(1)).add(music);
+    }
+
+    public Music findById(long musicId) {
+        return byId.get(musicId);
+    }
+
+    public Music findByTitle(String title) {
+        List<Music> matches = byTitle.get(normalizeTitle(title));
+        return matches == null || matches.isEmpty() ? null : matches.get(0);
+    }
+
+    public Music findByExactTitle(String title) {
+        List<Music> matches = byTitle.get(normalizeTitle(title));
+        if (matches != null) {
+            for (Music music : matches) {
+                if (music.getTitle().equals(title)) {
+                    return music;
+                }
+            }
+        }
+        return null;
+    }
+
+    private void removeTitle(Music music) {
+        String key = normalizeTitle(music.getTitle());
+        List<Music> matches = byTitle.get(key);
+        if (matches != null) {
+            matches.removeIf(m -> m.getId() == music.getId());
+            if (matches.isEmpty()) {
+                byTitle.remove(key);
+            }
+        }
+    }
+}
@@ -4,27 +4,50 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
 
 public class MusicManager {
-    private List<Music> serverMusics;
+    private final List<Music> serverMusics;
+    private final MusicIndex serverIndex;
+    private final NavigableMap<Long, Music> serverById = new TreeMap<>();
     private static final String MUSIC_DIR = System.getProperty("user.dir") + File.separator + "musics";
     private static final String DEFAULT_MUSICS_DIR = System.getProperty("user.dir") + File.separator + "default_musics";
 
     public MusicManager() {
-        this.serverMusics = DatabaseManager.loadServerMusics();
+        this.serverMusics = List.copyOf(DatabaseManager.loadServerMusics());
+        this.serverIndex = new MusicIndex(serverMusics);
+        for (Music music : serverMusics) {
+            serverById.put(music.getId(), music);
+            IdAllocator.MUSIC.advancePast(music.getId());
+        }
     }
 
     public List<Music> getServerMusics() {
-        return new ArrayList<>(serverMusics);
+        return serverMusics;
     }
 
-    public Music findByName(String name) {
-        for (Music music : serverMusics) {
-            if (music.getTitle().equalsIgnoreCase(name)) {
-                return music;
+    public List<Music> getServerMusicsAfter(long afterId, int count) {
+        List<Music> page = new ArrayList<>(count);
+        for (Music music : serverById.tailMap(afterId, false).values()) {
+            if (page.size() == count) {
+                break;
             }
+            page.add(music);
         }
-        return null;
+        return page;
+    }
+
+    public Music findByName(String name) {
+        return serverIndex.findByTitle(name);
+    }
+
+    public Music findByExactName(String name) {
+        return serverIndex.findByExactTitle(name);
+    }
+
+    public Music findById(long musicId) {
+        return serverIndex.findById(musicId);
     }
 
 }
\ No newline at end of file
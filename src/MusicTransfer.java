@@ -0,0 +1,75 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public class MusicTransfer {
+    public static final int CHUNK_SIZE = 64 * 1024;
+
+    public static class UploadTooLargeException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public UploadTooLargeException(long maxBytes) {
+            super("Upload exceeds " + maxBytes + " bytes");
+        }
+    }
+
+    public static void sendFile(Path file, long offset, long length, OutputStream out, WritableByteChannel channel) throws IOException {
+        DataOutputStream frames = new DataOutputStream(out);
+        try (FileChannel source = FileChannel.open(file, StandardOpenOption.READ)) {
+            long position = offset;
+            long end = offset + length;
+            while (position < end) {
+                int chunk = (int) Math.min(CHUNK_SIZE, end - position);
+                frames.writeInt(chunk);
+                frames.flush();
+                long sent = 0;
+                while (sent < chunk) {
+                    long n = source.transferTo(position + sent, chunk - sent, channel);
+                    if (n <= 0) {
+                        throw new IOException("File truncated during transfer");
+                    }
+                    sent += n;
+                }
+                position += chunk;
+            }
+        }
+        frames.writeInt(0);
+        frames.flush();
+    }
+
+    public static long receiveFile(DataInputStream in, Path target, long maxBytes) throws IOException {
+        long total = 0;
+        boolean tooLarge = false;
+        ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE);
+        try (FileChannel sink = FileChannel.open(target, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            int frameLength;
+            while ((frameLength = in.readInt()) != 0) {
+                if (frameLength < 0 || frameLength > CHUNK_SIZE) {
+                    throw new IOException("Invalid frame length " + frameLength);
+                }
+                in.readFully(buffer.array(), 0, frameLength);
+                total += frameLength;
+                if (total > maxBytes) {
+                    tooLarge = true;
+                    continue;
+                }
+                buffer.limit(frameLength).position(0);
+                while (buffer.hasRemaining()) {
+                    sink.write(buffer);
+                }
+                buffer.clear();
+            }
+        }
+        if (tooLarge) {
+            throw new UploadTooLargeException(maxBytes);
+        }
+        return total;
+    }
+}
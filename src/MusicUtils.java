@@ -1,18 +1,74 @@
 import com.mpatric.mp3agic.*;
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 public class MusicUtils {
+    private static final int MAX_CACHED_TRACKS = 256;
+    private static final Map<String, CachedTrack> trackCache = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedTrack> eldest) {
+            return size() > MAX_CACHED_TRACKS;
+        }
+    };
+
+    private static class CachedTrack {
+        private final long lastModified;
+        private final long length;
+        private final TrackMetadata metadata;
+
+        private CachedTrack(long lastModified, long length, TrackMetadata metadata) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.metadata = metadata;
+        }
+    }
+
     public static String[] extractMetaData(String filePath) {
+        TrackMetadata metadata = extractTrackMetadata(filePath);
+        return new String[] { metadata.getTitle(), metadata.getArtist() };
+    }
+
+    public static TrackMetadata extractTrackMetadata(String filePath) {
+        File file = new File(filePath);
+        String key = file.getAbsolutePath();
+        long lastModified = file.lastModified();
+        long length = file.length();
+        synchronized (trackCache) {
+            CachedTrack cached = trackCache.get(key);
+            if (cached != null && cached.lastModified == lastModified && cached.length == length) {
+                return cached.metadata;
+            }
+        }
+        TrackMetadata metadata = parseTrackMetadata(filePath);
+        if (length > 0) {
+            synchronized (trackCache) {
+                trackCache.put(key, new CachedTrack(lastModified, length, metadata));
+            }
+        }
+        return metadata;
+    }
+
+    private static TrackMetadata parseTrackMetadata(String filePath) {
         try {
             Mp3File mp3file = new Mp3File(filePath);
+            String title = null;
+            String artist = null;
+            byte[] albumImage = null;
             if (mp3file.hasId3v2Tag()) {
                 ID3v2 id3v2Tag = mp3file.getId3v2Tag();
-                String title = id3v2Tag.getTitle();
-                String artist = id3v2Tag.getArtist();
-                return new String[] { title, artist };
+                title = id3v2Tag.getTitle();
+                artist = id3v2Tag.getArtist();
+                albumImage = id3v2Tag.getAlbumImage();
+            } else if (mp3file.hasId3v1Tag()) {
+                ID3v1 id3v1Tag = mp3file.getId3v1Tag();
+                title = id3v1Tag.getTitle();
+                artist = id3v1Tag.getArtist();
             }
+            return new TrackMetadata(title, artist, mp3file.getLengthInSeconds(), mp3file.getBitrate(), albumImage);
         } catch (Exception e) {
-            e.printStackTrace();
+            Log.warn("Error reading tags from " + filePath + ": " + e.getMessage());
+            return new TrackMetadata(null, null, 0, 0, null);
         }
-        return new String[] { null, null };
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,314 @@
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class NioServer {
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_LINE_BYTES = 64 * 1024 * 1024;
+    private static final int WRITE_HIGH_WATERMARK = 4 * 1024 * 1024;
+    private static final int WRITE_LOW_WATERMARK = 1024 * 1024;
+    private static final int MAX_PENDING_LINES = 64;
+    private static final byte[] BUSY_RESPONSE = "{\"requestId\":\"\",\"status\":\"error\",\"message\":\"Server busy, try again later\"}\n"
+            .getBytes(StandardCharsets.UTF_8);
+
+    private final RequestHandeler requestHandeler;
+    private final ExecutorService workers = Executors.newFixedThreadPool(ServerConfig.POOL_SIZE);
+    private final Queue<Runnable> selectorTasks = new ConcurrentLinkedQueue<>();
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+    private Selector selector;
+    private volatile int connectionCount;
+
+    private class Connection {
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private final ByteArrayOutputStream lineBuffer = new ByteArrayOutputStream(256);
+        private final Deque<byte[]> pendingLines = new ArrayDeque<>();
+        private final Deque<ByteBuffer> writeQueue = new ArrayDeque<>();
+        private long queuedBytes;
+        private int inFlight;
+        private boolean readPaused;
+        private long lastActive = System.currentTimeMillis();
+
+        private Connection(SocketChannel channel, SelectionKey key) {
+            this.channel = channel;
+            this.key = key;
+        }
+    }
+
+    public NioServer(RequestHandeler requestHandeler) {
+        this.requestHandeler = requestHandeler;
+    }
+
+    public void run() {
+        try (Selector selector = Selector.open(); ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+            this.selector = selector;
+            serverChannel.bind(new InetSocketAddress(ServerConfig.PORT));
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+            Log.info("Server started on port " + ServerConfig.PORT + " (nio selector)");
+
+            long sweepInterval = ServerConfig.IDLE_TIMEOUT_MS > 0 ? Math.max(ServerConfig.IDLE_TIMEOUT_MS / 4, 100) : 0;
+            long nextSweep = System.currentTimeMillis() + sweepInterval;
+            while (true) {
+                selector.select(sweepInterval);
+                Runnable task;
+                while ((task = selectorTasks.poll()) != null) {
+                    task.run();
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    try {
+                        if (!key.isValid()) {
+                            continue;
+                        }
+                        if (key.isAcceptable()) {
+                            accept(serverChannel);
+                        }
+                        if (key.isValid() && key.isReadable()) {
+                            read((Connection) key.attachment());
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            write((Connection) key.attachment());
+                        }
+                    } catch (IOException e) {
+                        if (key.attachment() != null) {
+                            close((Connection) key.attachment());
+                        }
+                    }
+                }
+                if (sweepInterval > 0 && System.currentTimeMillis() >= nextSweep) {
+                    closeIdle();
+                    nextSweep = System.currentTimeMillis() + sweepInterval;
+                }
+            }
+        } catch (IOException e) {
+            Log.error("Server error: " + e.getMessage());
+        } finally {
+            workers.shutdown();
+        }
+    }
+
+    public int getConnectionCount() {
+        return connectionCount;
+    }
+
+    public int getQueueDepth() {
+        return ServerStats.queueDepth(workers);
+    }
+
+    private void accept(ServerSocketChannel serverChannel) throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        if (connectionCount >= ServerConfig.MAX_CONNECTIONS) {
+            rejectBusy(channel);
+            return;
+        }
+        channel.configureBlocking(false);
+        SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+        key.attach(new Connection(channel, key));
+        connectionCount++;
+        Log.info("Client connected: " + channel.getRemoteAddress());
+    }
+
+    private void rejectBusy(SocketChannel channel) {
+        try {
+            channel.write(ByteBuffer.wrap(BUSY_RESPONSE));
+        } catch (IOException e) {
+            Log.warn("Error rejecting client: " + e.getMessage());
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                Log.warn("Error closing client: " + e.getMessage());
+            }
+        }
+    }
+
+    private void closeIdle() {
+        long cutoff = System.currentTimeMillis() - ServerConfig.IDLE_TIMEOUT_MS;
+        for (SelectionKey key : selector.keys()) {
+            Connection connection = (Connection) key.attachment();
+            if (connection != null && connection.inFlight == 0 && connection.writeQueue.isEmpty()
+                    && connection.lastActive < cutoff) {
+                Log.info("Closing idle client: " + connection.channel.socket().getInetAddress());
+                close(connection);
+            }
+        }
+    }
+
+    private void read(Connection connection) throws IOException {
+        readBuffer.clear();
+        int n = connection.channel.read(readBuffer);
+        if (n < 0) {
+            close(connection);
+            return;
+        }
+        connection.lastActive = System.currentTimeMillis();
+        readBuffer.flip();
+        while (readBuffer.hasRemaining()) {
+            byte b = readBuffer.get();
+            if (b == '\n') {
+                byte[] line = connection.lineBuffer.toByteArray();
+                connection.lineBuffer.reset();
+                if (line.length > 0 && !(line.length == 1 && line[0] == '\r')) {
+                    enqueueLine(connection, line);
+                }
+            } else {
+                connection.lineBuffer.write(b);
+                if (connection.lineBuffer.size() > MAX_LINE_BYTES) {
+                    throw new IOException("Request line too long");
+                }
+            }
+        }
+        updateInterest(connection);
+    }
+
+    private void enqueueLine(Connection connection, byte[] line) {
+        if (connection.inFlight >= ServerConfig.MAX_IN_FLIGHT) {
+            connection.pendingLines.add(line);
+        } else {
+            dispatch(connection, line);
+        }
+    }
+
+    private void dispatch(Connection connection, byte[] line) {
+        connection.inFlight++;
+        workers.execute(() -> {
+            byte[] response = null;
+            try {
+                response = process(line);
+            } catch (RuntimeException e) {
+                Log.error("Error processing request", e);
+                JsonObject error = new JsonObject();
+                error.addProperty("requestId", "");
+                error.addProperty("status", "error");
+                error.addProperty("message", "Server error: " + e.getMessage());
+                response = encodeLine(error.toString());
+            } finally {
+                byte[] result = response;
+                selectorTasks.add(() -> complete(connection, result));
+                selector.wakeup();
+            }
+        });
+    }
+
+    private static byte[] encodeLine(String line) {
+        return (line + "\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private byte[] process(byte[] raw) {
+        int length = raw.length > 0 && raw[raw.length - 1] == '\r' ? raw.length - 1 : raw.length;
+        String line = new String(raw, 0, length, StandardCharsets.UTF_8);
+        JsonObject request;
+        try {
+            request = JsonParser.parseString(line).getAsJsonObject();
+        } catch (JsonParseException | IllegalStateException e) {
+            return encodeLine(JsonCodec.toJson(requestHandeler.invalidRequest(e.getMessage())));
+        }
+        if (requestHandeler.isStreamingAction(request)) {
+            JsonObject response = new JsonObject();
+            response.addProperty("requestId", request.has("requestId") ? request.get("requestId").getAsString() : "");
+            response.addProperty("status", "error");
+            response.addProperty("message", "Streaming actions are not supported in nio mode");
+            return encodeLine(response.toString());
+        }
+        long start = System.nanoTime();
+        JsonObject response = requestHandeler.respond(request);
+        byte[] responseLine = encodeLine(JsonCodec.toJson(response));
+        JsonElement action = request.get("action");
+        String actionName = action != null && action.isJsonPrimitive() ? action.getAsString() : null;
+        ServerStats.recordSizes(actionName, raw.length + 1, responseLine.length);
+        Log.access(actionName, response, System.nanoTime() - start, raw.length + 1, responseLine.length);
+        return responseLine;
+    }
+
+    private void complete(Connection connection, byte[] response) {
+        connection.inFlight--;
+        if (!connection.key.isValid()) {
+            return;
+        }
+        if (response == null) {
+            close(connection);
+            return;
+        }
+        connection.lastActive = System.currentTimeMillis();
+        connection.writeQueue.add(ByteBuffer.wrap(response));
+        connection.queuedBytes += response.length;
+        try {
+            write(connection);
+        } catch (IOException e) {
+            close(connection);
+            return;
+        }
+        byte[] next = connection.pendingLines.poll();
+        if (next != null) {
+            dispatch(connection, next);
+        }
+        updateInterest(connection);
+    }
+
+    private void write(Connection connection) throws IOException {
+        while (!connection.writeQueue.isEmpty()) {
+            ByteBuffer buffer = connection.writeQueue.peek();
+            int written = connection.channel.write(buffer);
+            connection.queuedBytes -= written;
+            if (buffer.hasRemaining()) {
+                break;
+            }
+            connection.writeQueue.poll();
+        }
+        updateInterest(connection);
+    }
+
+    private void updateInterest(Connection connection) {
+        if (!connection.key.isValid()) {
+            return;
+        }
+        boolean backlogFull = connection.pendingLines.size() >= MAX_PENDING_LINES;
+        if (connection.queuedBytes > WRITE_HIGH_WATERMARK || backlogFull) {
+            connection.readPaused = true;
+        } else if (connection.readPaused && connection.queuedBytes < WRITE_LOW_WATERMARK) {
+            connection.readPaused = false;
+        }
+        int ops = connection.readPaused ? 0 : SelectionKey.OP_READ;
+        if (!connection.writeQueue.isEmpty()) {
+            ops |= SelectionKey.OP_WRITE;
+        }
+        connection.key.interestOps(ops);
+    }
+
+    private void close(Connection connection) {
+        if (!connection.channel.isOpen()) {
+            return;
+        }
+        connection.key.cancel();
+        try {
+            Log.info("Client disconnected: " + connection.channel.getRemoteAddress());
+            connection.channel.close();
+        } catch (IOException e) {
+            Log.warn("Error closing client: " + e.getMessage());
+        }
+        connectionCount--;
+    }
+}
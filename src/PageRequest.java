@@ -0,0 +1,120 @@
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.function.ToLongFunction;
+
+public class PageRequest {
+    private static final int DEFAULT_LIMIT = 50;
+    private static final int MAX_LIMIT = 200;
+    private final boolean paged;
+    private final long afterId;
+    private final int limit;
+    private final Set<String> fields;
+
+    private PageRequest(boolean paged, long afterId, int limit, Set<String> fields) {
+        this.paged = paged;
+        this.afterId = afterId;
+        this.limit = limit;
+        this.fields = fields;
+    }
+
+    public static class InvalidCursorException extends IllegalArgumentException {
+        private static final long serialVersionUID = 1L;
+
+        public InvalidCursorException(String cursor) {
+            super("Invalid cursor: " + cursor);
+        }
+    }
+
+    public static PageRequest from(JsonObject data) {
+        boolean paged = data.has("limit") || data.has("cursor");
+        long afterId = data.has("cursor") && !data.get("cursor").isJsonNull() ? parseCursor(data.get("cursor")) : 0;
+        int limit = data.has("limit") ? Math.max(1, Math.min(MAX_LIMIT, data.get("limit").getAsInt())) : DEFAULT_LIMIT;
+        Set<String> fields = null;
+        if (data.has("fields")) {
+            fields = new HashSet<>();
+            fields.add("id");
+            for (JsonElement field : data.getAsJsonArray("fields")) {
+                fields.add(field.getAsString());
+            }
+        }
+        return new PageRequest(paged, afterId, limit, fields);
+    }
+
+    private static long parseCursor(JsonElement cursor) {
+        if (!cursor.isJsonPrimitive()) {
+            throw new InvalidCursorException(cursor.toString());
+        }
+        try {
+            long afterId = Long.parseLong(cursor.getAsString());
+            if (afterId < 0) {
+                throw new InvalidCursorException(cursor.getAsString());
+            }
+            return afterId;
+        } catch (NumberFormatException e) {
+            throw new InvalidCursorException(cursor.getAsString());
+        }
+    }
+
+    public boolean isPaged() {
+        return paged;
+    }
+
+    public long getAfterId() {
+        return afterId;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public boolean includes(String field) {
+        return fields == null || fields.contains(field);
+    }
+
+    public JsonObject project(JsonObject json) {
+        if (fields != null) {
+            json.keySet().removeIf(key -> !fields.contains(key));
+        }
+        return json;
+    }
+
+    public <T> List<T> slice(Collection<T> items, ToLongFunction<T> id) {
+        if (!paged) {
+            return items instanceof List<T> list ? list : List.copyOf(items);
+        }
+        Comparator<T> byId = Comparator.comparingLong(id);
+        PriorityQueue<T> smallest = new PriorityQueue<>(limit + 2, byId.reversed());
+        for (T item : items) {
+            if (id.applyAsLong(item) <= afterId) {
+                continue;
+            }
+            smallest.add(item);
+            if (smallest.size() > limit + 1) {
+                smallest.poll();
+            }
+        }
+        List<T> page = new ArrayList<>(smallest);
+        page.sort(byId);
+        return page;
+    }
+
+    public <T> List<T> finish(List<T> page, ToLongFunction<T> id, JsonObject response) {
+        if (!paged) {
+            return page;
+        }
+        if (page.size() > limit) {
+            page = page.subList(0, limit);
+            response.addProperty("nextCursor", String.valueOf(id.applyAsLong(page.get(limit - 1))));
+        } else {
+            response.add("nextCursor", null);
+        }
+        return page;
+    }
+}
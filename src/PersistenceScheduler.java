@@ -0,0 +1,101 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+public class PersistenceScheduler {
+    private final Consumer<List<User>> writer;
+    private final long intervalMs;
+    private final Object flushLock = new Object();
+    private Set<User> dirty = newDirtySet();
+    private long nextGeneration = 1;
+    private long flushedGeneration;
+    private long failedGeneration;
+
+    public PersistenceScheduler(Consumer<List<User>> writer, long intervalMs) {
+        this.writer = writer;
+        this.intervalMs = intervalMs;
+    }
+
+    public void start() {
+        if (intervalMs > 0) {
+            Thread flusher = new Thread(this::flushLoop, "persistence-scheduler");
+            flusher.setDaemon(true);
+            flusher.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(this::flush, "persistence-flush"));
+        }
+    }
+
+    private static Set<User> newDirtySet() {
+        return Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+
+    public void markDirty(Collection<User> users) {
+        if (intervalMs <= 0) {
+            writer.accept(new ArrayList<>(users));
+            return;
+        }
+        synchronized (this) {
+            dirty.addAll(users);
+        }
+    }
+
+    public boolean awaitDurable() {
+        synchronized (this) {
+            long target = dirty.isEmpty() ? nextGeneration - 1 : nextGeneration;
+            while (flushedGeneration < target && failedGeneration < target) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            return flushedGeneration >= target;
+        }
+    }
+
+    private void flushLoop() {
+        while (true) {
+            try {
+                Thread.sleep(intervalMs);
+            } catch (InterruptedException e) {
+                return;
+            }
+            flush();
+        }
+    }
+
+    private void flush() {
+        synchronized (flushLock) {
+            List<User> batch;
+            long generation;
+            synchronized (this) {
+                if (dirty.isEmpty()) {
+                    return;
+                }
+                batch = new ArrayList<>(dirty);
+                dirty = newDirtySet();
+                generation = nextGeneration++;
+            }
+            try {
+                writer.accept(batch);
+            } catch (RuntimeException e) {
+                Log.error("Error persisting " + batch.size() + " users, retrying next interval", e);
+                synchronized (this) {
+                    dirty.addAll(batch);
+                    failedGeneration = generation;
+                    notifyAll();
+                }
+                return;
+            }
+            synchronized (this) {
+                flushedGeneration = generation;
+                notifyAll();
+            }
+        }
+    }
+}
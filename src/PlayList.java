@@ -1,47 +1,19 @@
 import java.util.ArrayList;
 import java.util.List;
-import java.io.*;
+import java.util.Objects;
+import java.util.function.UnaryOperator;
 
 public class PlayList {
-    private static long lastId = loadLastId("playlist_last_id.txt");
     private long id;
     private String name;
     private String creatorEmail;
-    private List<Music> musics;
+    private volatile List<Music> musics;
 
     public PlayList(String name, String creatorEmail) {
-        this.id = ++lastId;
-        saveLastId("playlist_last_id.txt", lastId);
+        this.id = IdAllocator.PLAYLIST.next();
         this.name = name;
         this.creatorEmail = creatorEmail;
-        this.musics = new ArrayList<>();
-    }
-
-    private static long loadLastId(String filename) {
-        try {
-            File file = new File(filename);
-            if (file.exists()) {
-                BufferedReader reader = new BufferedReader(new FileReader(file));
-                String line = reader.readLine();
-                reader.close();
-                if (line != null && !line.trim().isEmpty()) {
-                    return Long.parseLong(line.trim());
-                }
-            }
-        } catch (IOException | NumberFormatException e) {
-            e.printStackTrace();
-        }
-        return 0;
-    }
-
-    private static void saveLastId(String filename, long id) {
-        try {
-            BufferedWriter writer = new BufferedWriter(new FileWriter(filename));
-            writer.write(String.valueOf(id));
-            writer.close();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        this.musics = List.of();
     }
 
     public long getId() {
@@ -61,22 +33,37 @@ public class PlayList {
     }
 
     public List<Music> getMusics() {
-        return new ArrayList<>(musics);
+        return musics;
     }
 
-    public boolean addMusic(Music music) {
+    public void useSnapshotList() {
+        List<Music> loaded = musics != null ? new ArrayList<>(musics) : new ArrayList<>();
+        loaded.removeIf(Objects::isNull);
+        musics = List.copyOf(loaded);
+    }
+
+    public synchronized void resolveMusics(UnaryOperator<Music> resolver) {
+        List<Music> next = new ArrayList<>(musics);
+        next.replaceAll(resolver);
+        musics = List.copyOf(next);
+    }
+
+    public synchronized boolean addMusic(Music music) {
         if (music != null && !musics.contains(music)) {
-            musics.add(music);
+            List<Music> next = new ArrayList<>(musics.size() + 1);
+            next.addAll(musics);
+            next.add(music);
+            publish(next);
             return true;
         }
         return false;
     }
 
-    public boolean removeMusic(String musicName) {
+    public synchronized boolean removeMusic(String musicName) {
         if (musicName != null) {
             for (int i = 0; i < musics.size(); i++) {
                 if (musics.get(i).getTitle().equals(musicName)) {
-                    musics.remove(i);
+                    removeAt(i);
                     return true;
                 }
             }
@@ -84,13 +71,23 @@ public class PlayList {
         return false;
     }
 
-    public boolean removeMusicById(long musicId) {
+    public synchronized boolean removeMusicById(long musicId) {
         for (int i = 0; i < musics.size(); i++) {
             if (musics.get(i).getId() == musicId) {
-                musics.remove(i);
+                removeAt(i);
                 return true;
             }
         }
         return false;
     }
-}
\ No newline at end of file
+
+    private void removeAt(int index) {
+        List<Music> next = new ArrayList<>(musics);
+        next.remove(index);
+        publish(next);
+    }
+
+    private void publish(List<Music> next) {
+        musics = List.copyOf(next);
+    }
+}
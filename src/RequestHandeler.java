@@ -1,733 +1,1042 @@
 import com.google.gson.*;
+import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Base64;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 
 public class RequestHandeler {
     private final Gson gson = new Gson();
+    private final TypeAdapter<User> userAdapter = gson.getAdapter(User.class);
+    private final ActionRegistry actions = new ActionRegistry();
     private final UserManager userManager;
     private final MusicManager musicManager;
+    private final IngestionPipeline ingestion;
     private static final String MUSIC_DIR = System.getProperty("user.dir") + File.separator + "musics";
+    private static final Set<String> STREAMING_ACTIONS = Set.of("download_music_stream", "upload_music_stream");
+    private static final long MAX_UPLOAD_BYTES = 200L * 1024 * 1024;
+    private static final int MAX_BATCH_SIZE = 500;
+    private static final int MAX_SEARCH_RESULTS = 100;
+    private final CoverCache coverCache = new CoverCache(MUSIC_DIR);
 
-    public RequestHandeler() {
-        this.userManager = new UserManager();
-        this.musicManager = new MusicManager();
-        userManager.setMusicManager(musicManager);
+    public RequestHandeler(UserManager userManager, MusicManager musicManager) {
+        this.userManager = userManager;
+        this.musicManager = musicManager;
         File musicDir = new File(MUSIC_DIR);
         if (!musicDir.exists()) {
             musicDir.mkdirs();
         }
+        this.ingestion = new IngestionPipeline(userManager, MUSIC_DIR);
+        ingestion.resumePending();
+        registerActions();
+        actions.addHook(ServerStats::completed);
+        ServerStats.trackQueue("ingestion", ingestion::getQueueDepth);
     }
 
     public String processRequest(String requestLine) {
+        JsonObject request;
+        try {
+            request = JsonParser.parseString(requestLine).getAsJsonObject();
+        } catch (JsonParseException | IllegalStateException e) {
+            return JsonCodec.toJson(invalidRequest(e.getMessage()));
+        }
+        return processRequest(request);
+    }
+
+    public JsonObject invalidRequest(String detail) {
+        JsonObject response = new JsonObject();
+        response.addProperty("status", "error");
+        response.addProperty("message", "Invalid JSON format");
+        Log.warn("Invalid JSON: " + detail);
+        return response;
+    }
+
+    public Path getUploadDir() {
+        return Paths.get(MUSIC_DIR);
+    }
+
+    public boolean isStreamingAction(JsonObject request) {
+        JsonElement action = request.get("action");
+        return action != null && STREAMING_ACTIONS.contains(action.getAsString());
+    }
+
+    public JsonObject processStreamingRequest(JsonObject request, DataInputStream in, OutputStream out, WritableByteChannel channel) throws IOException {
         JsonObject response = new JsonObject();
+        String action = request.get("action").getAsString();
+        JsonElement requestId = request.get("requestId");
+        JsonElement element = request.get("data");
+        JsonObject data = element != null && element.isJsonObject() ? element.getAsJsonObject() : new JsonObject();
+        response.addProperty("requestId", requestId != null && requestId.isJsonPrimitive() ? requestId.getAsString() : "");
+        if (action.equals("upload_music_stream")) {
+            try {
+                receiveUpload(data, in, response);
+            } catch (RuntimeException e) {
+                streamingError(action, response, e);
+            }
+            writeLine(out, response.toString());
+            return response;
+        }
+        File file;
         try {
-            JsonObject request = JsonParser.parseString(requestLine).getAsJsonObject();
-            String action = request.get("action").getAsString();
-            JsonObject data = request.get("data").getAsJsonObject();
-            String requestId = request.get("requestId") != null ? request.get("requestId").getAsString() : "";
-            response.addProperty("requestId", requestId);
-
-            switch (action) {
-                case "register": {
-                    String email = data.get("email").getAsString();
-                    String username = data.get("username").getAsString();
-                    String password = data.get("password").getAsString();
-                    boolean registered = userManager.HandelRegister(email, username, password);
-                    response.addProperty("status", registered ? "success" : "error");
-                    response.addProperty("message", registered ? "User registered" : "Email already exists");
-                    if (registered) {
-                        response.add("data", gson.toJsonTree(userManager.getUserByEmail(email)));
-                    }
-                    break;
-                }
-                case "login": {
-                    String email = data.get("email").getAsString();
-                    String password = data.get("password").getAsString();
-                    boolean loggedIn = userManager.HandelLogin(email, password);
-                    response.addProperty("status", loggedIn ? "success" : "error");
-                    response.addProperty("message", loggedIn ? "Login successful" : "Invalid credentials");
-                    if (loggedIn) {
-                        response.add("data", gson.toJsonTree(userManager.getUserByEmail(email)));
-                    }
-                    break;
-                }
-                case "get_user": {
-                    String email = data.get("email").getAsString();
-                    User user = userManager.getUserByEmail(email);
-                    if (user != null) {
-                        JsonObject userJson = new JsonObject();
-                        userJson.addProperty("email", user.getEmail());
-                        userJson.addProperty("username", user.getUsername());
-                        userJson.addProperty("allowSharing", user.isAllowSharing());
-                        response.add("data", userJson);
-                        response.addProperty("status", "success");
-                        response.addProperty("message", "User retrieved");
-                    } else {
-                        response.addProperty("status", "error");
-                        response.addProperty("message", "User not found");
-                    }
-                    break;
-                }
-                case "update_user": {
-                    String email = data.get("email").getAsString();
-                    String username = data.get("username").getAsString();
-                    String password = data.get("password").getAsString();
-                    boolean updated = userManager.updateUser(email, username, password);
-                    response.addProperty("status", updated ? "success" : "error");
-                    response.addProperty("message", updated ? "User updated" : "Update failed");
-                    if (updated) {
-                        response.add("data", gson.toJsonTree(userManager.getUserByEmail(email)));
-                    }
-                    break;
-                }
-                case "delete_user": {
-                    String email = data.get("email").getAsString();
-                    boolean deleted = userManager.deleteUser(email);
-                    response.addProperty("status", deleted ? "success" : "error");
-                    response.addProperty("message", deleted ? "User deleted" : "User not found");
-                    break;
-                }
-                case "like_music": {
-                    String email = data.get("email").getAsString();
-                    String musicName = data.get("music_name").getAsString().trim();
-                    User user = userManager.getUserByEmail(email);
-                    Music music = userManager.findMusicEverywhere(musicName, user);
-                    if (music == null) {
-                        response.addProperty("status", "error");
-                        response.addProperty("message", "Music not found");
-                        break;
-                    }
-                    boolean isAlreadyLiked = user.getLikedMusics().stream()
-                            .anyMatch(m -> m.getTitle().trim().equalsIgnoreCase(musicName));
-                    if (isAlreadyLiked) {
-                        response.addProperty("status", "error");
-                        response.addProperty("message", "Music already liked");
-                        break;
-                    }
-                    boolean liked = user.likeMusic(music);
-                    if (liked) {
-                        music.addLike();
-                        DatabaseManager.saveUsers(userManager.getUsers());
-                        response.addProperty("status", "success");
-                        response.addProperty("message", "Music liked successfully");
-                    } else {
-                        response.addProperty("status", "error");
-                        response.addProperty("message", "Failed to like music");
-                    }
-                    break;
-                }
-                case "unlike_music": {
-                    String email = data.get("email").getAsString();
-                    String musicName = data.get("music_name").getAsString().trim();
-                    User user = userManager.getUserByEmail(email);
-                    Music music = userManager.findMusicEverywhere(musicName, user);
-                    boolean isLiked = user.getLikedMusics().stream()
-                            .anyMatch(m -> m.getTitle().trim().equalsIgnoreCase(musicName));
-                    if (!isLiked) {
-                        response.addProperty("status", "error");
-                        response.addProperty("message", "Music not liked");
-                        break;
-                    }
-                    boolean unliked = user.unlikeMusic(musicName);
-                    if (unliked) {
-                        music.removeLike();
-                        DatabaseManager.saveUsers(userManager.getUsers());
-                        response.addProperty("status", "success");
-                        response.addProperty("message", "Music unliked successfully");
-                    } else {
-                        response.addProperty("status", "error");
-                        response.addProperty("message", "Failed to unlike music");
-                    }
-                    break;
-                }
-                case "list_liked_music": {
-                    String email = data.get("email").getAsString();
-                    User user = userManager.getUserByEmail(email);
-                    if (user != null) {
-                        JsonArray musicArray = new JsonArray();
-                        for (Music music : user.getLikedMusics()) {
-                            JsonObject musicJson = createMusicJson(music);
-                            String coverFileName = music.getTitle() + "-cover.jpg";
-                            File coverFile = new File(MUSIC_DIR + File.separator + coverFileName);
-                            if (coverFile.exists()) {
-                                byte[] coverBytes = Files.readAllBytes(coverFile.toPath());
-                                musicJson.addProperty("cover", Base64.getEncoder().encodeToString(coverBytes));
-                            }
-                            musicArray.add(musicJson);
-                        }
-                        response.add("data", musicArray);
-                        response.addProperty("status", "success");
-                        response.addProperty("message", "Liked music retrieved");
-                    } else {
-                        response.addProperty("status", "error");
-                        response.addProperty("message", "User not found");
-                    }
-                    break;
+            file = prepareDownload(data, response);
+        } catch (RuntimeException e) {
+            streamingError(action, response, e);
+            file = null;
+        }
+        writeLine(out, response.toString());
+        if (file != null) {
+            JsonObject range = response.getAsJsonObject("data");
+            MusicTransfer.sendFile(file.toPath(), range.get("offset").getAsLong(), range.get("length").getAsLong(), out, channel);
+        }
+        return response;
+    }
+
+    private void streamingError(String action, JsonObject response, RuntimeException e) {
+        Log.error("Error processing " + action, e);
+        response.remove("data");
+        response.addProperty("status", "error");
+        response.addProperty("message", "Server error: " + e.getMessage());
+    }
+
+    private File prepareDownload(JsonObject data, JsonObject response) {
+        String missing = ActionRegistry.missingField(data, "name");
+        if (missing != null) {
+            response.addProperty("status", "error");
+            response.addProperty("message", "Missing field: " + missing);
+            return null;
+        }
+        String musicName = data.get("name").getAsString().trim();
+        String email = data.has("email") ? data.get("email").getAsString() : "";
+        User user = email.isEmpty() ? null : userManager.getUserByEmail(email);
+        Music music = userManager.findDownloadableMusic(musicName, user);
+        File file = music != null ? new File(MUSIC_DIR + File.separator + music.getFilePath()) : null;
+        if (file == null || !file.exists()) {
+            response.addProperty("status", "error");
+            response.addProperty("message", music == null ? "Music not found" : "Music file not found on server");
+            return null;
+        }
+        long size = file.length();
+        long offset = data.has("offset") ? data.get("offset").getAsLong() : 0;
+        long length = data.has("length") ? data.get("length").getAsLong() : size - offset;
+        if (offset < 0 || offset > size || length < 0) {
+            response.addProperty("status", "error");
+            response.addProperty("message", "Invalid byte range");
+            return null;
+        }
+        length = Math.min(length, size - offset);
+        JsonObject dataResponse = new JsonObject();
+        dataResponse.addProperty("size", size);
+        dataResponse.addProperty("offset", offset);
+        dataResponse.addProperty("length", length);
+        dataResponse.addProperty("chunkSize", MusicTransfer.CHUNK_SIZE);
+        response.add("data", dataResponse);
+        response.addProperty("status", "success");
+        response.addProperty("message", "Streaming music file");
+        return file;
+    }
+
+    private void receiveUpload(JsonObject data, DataInputStream in, JsonObject response) throws IOException {
+        Path partFile = Files.createTempFile(Paths.get(MUSIC_DIR), ".upload-", ".part");
+        try {
+            MusicTransfer.receiveFile(in, partFile, MAX_UPLOAD_BYTES);
+            String missing = ActionRegistry.missingField(data, "email", "title", "artist");
+            if (missing != null) {
+                response.addProperty("status", "error");
+                response.addProperty("message", "Missing field: " + missing);
+                return;
+            }
+            String email = data.get("email").getAsString();
+            String title = data.get("title").getAsString();
+            String artist = data.get("artist").getAsString();
+            String base64Cover = data.has("cover") ? data.get("cover").getAsString() : null;
+            User user = userManager.getUserByEmail(email);
+            if (user == null) {
+                response.addProperty("status", "error");
+                response.addProperty("message", "User not found");
+                return;
+            }
+            UserLocks.Held held = userManager.lockUsers(email);
+            try {
+                if (hasSong(user, title, artist)) {
+                    response.addProperty("status", "error");
+                    response.addProperty("message", "This song already exists in your library");
+                    return;
                 }
-                case "share_playlist": {
-                    String email = data.get("email").getAsString();
-                    String targetEmail = data.get("target_email").getAsString();
-                    String playlistName = data.get("playlist_name").getAsString();
-                    User user = userManager.getUserByEmail(email);
-                    User targetUser = userManager.getUserByEmail(targetEmail);
-                    PlayList playlist = user != null ? user.findPlaylistByName(playlistName) : null;
-                    if (user != null && targetUser != null && playlist != null && playlist.getCreatorEmail().equals(email)) {
-                        if (targetUser.isAllowSharing()) {
-                            PlayList shared = new PlayList(playlist.getName(), targetEmail);
-                            for (Music music : playlist.getMusics()) {
-                                boolean addedToUser = targetUser.addUserMusic(music);
-                                if (addedToUser) {
-                                    shared.addMusic(music);
-                                } else {
-                                    System.out.println("Music " + music.getTitle() + " already exists in target user's library");
-                                }
-                            }
-                            targetUser.addPlaylist(shared);
-                            DatabaseManager.saveUsers(userManager.getUsers());
-                            response.addProperty("status", "success");
-                            response.addProperty("message", "Playlist shared with " + shared.getMusics().size() + " songs");
-                        } else {
-                            response.addProperty("status", "error");
-                            response.addProperty("message", "Target user has disabled sharing");
-                        }
+                String musicFileName = title + ".mp3";
+                Files.move(partFile, Paths.get(MUSIC_DIR, musicFileName), StandardCopyOption.REPLACE_EXISTING);
+                addUploadedMusic(user, email, title, artist, musicFileName, base64Cover, new HashSet<>(), response);
+            } finally {
+                held.close();
+            }
+        } catch (MusicTransfer.UploadTooLargeException e) {
+            response.addProperty("status", "error");
+            response.addProperty("message", e.getMessage());
+        } finally {
+            Files.deleteIfExists(partFile);
+        }
+    }
+
+    private void writeLine(OutputStream out, String line) throws IOException {
+        out.write(line.getBytes(StandardCharsets.UTF_8));
+        out.write('\n');
+        out.flush();
+    }
+
+    private boolean hasSong(User user, String title, String artist) {
+        return user.getUserMusics().stream()
+                .anyMatch(m -> m.getTitle().trim().equalsIgnoreCase(title.trim()) && m.getArtist().trim().equalsIgnoreCase(artist.trim()));
+    }
+
+    private void addUploadedMusic(User user, String email, String title, String artist, String musicFileName,
+                                  String base64Cover, Set<String> knownCovers, JsonObject response) throws IOException {
+        String coverFileName = null;
+        if (base64Cover != null && !base64Cover.isEmpty()) {
+            coverFileName = CoverCache.coverFileName(title);
+            String coverFilePath = MUSIC_DIR + File.separator + coverFileName;
+            byte[] coverBytes = CpuPool.call(() -> Base64.getDecoder().decode(base64Cover));
+            try (FileOutputStream fos = new FileOutputStream(coverFilePath)) {
+                fos.write(coverBytes);
+            }
+        }
+        Music music = userManager.addUserMusic(user, new Music(title, artist, musicFileName, email, false));
+        if (music == null) {
+            response.addProperty("status", "error");
+            response.addProperty("message", "This song already exists in your library");
+            return;
+        }
+        ingestion.submit(user, music);
+        userManager.saveUser(user);
+        JsonObject dataResponse = createMusicJson(music);
+        if (coverFileName != null) {
+            addCover(dataResponse, title, knownCovers);
+        }
+        response.add("data", dataResponse);
+        response.addProperty("status", "success");
+        response.addProperty("message", "Local music added successfully" +
+                (coverFileName != null ? " with cover" : ""));
+    }
+
+    public String processRequest(JsonObject request) {
+        return JsonCodec.toJson(respond(request));
+    }
+
+    public JsonObject respond(JsonObject request) {
+        JsonObject response = handleRequest(request);
+        if (wantsDurability(request) && !userManager.awaitDurable()) {
+            response.addProperty("status", "error");
+            response.addProperty("message", "Changes could not be persisted yet and will be retried");
+        }
+        return response;
+    }
+
+    private static boolean wantsDurability(JsonObject request) {
+        JsonElement data = request.get("data");
+        if (data == null || !data.isJsonObject()) {
+            return false;
+        }
+        JsonElement durable = data.getAsJsonObject().get("durable");
+        return durable != null && durable.isJsonPrimitive() && durable.getAsBoolean();
+    }
+
+    private JsonObject handleRequest(JsonObject request) {
+        JsonObject response = new JsonObject();
+        String requestId = stringField(request, "requestId");
+        response.addProperty("requestId", requestId != null ? requestId : "");
+        ActionRegistry.Action<?> action = actions.find(stringField(request, "action"));
+        if (action == null) {
+            response.addProperty("status", "error");
+            response.addProperty("message", "Unknown action");
+            return response;
+        }
+        JsonElement dataElement = request.get("data");
+        JsonObject data = dataElement != null && dataElement.isJsonObject() ? dataElement.getAsJsonObject() : new JsonObject();
+        long start = System.nanoTime();
+        if (action.isReadOnly() || action.isLockingUsers()) {
+            execute(action, data, response);
+        } else {
+            UserLocks.Held held = userManager.lockUsers(stringField(data, "email"), stringField(data, "target_email"));
+            try {
+                execute(action, data, response);
+            } finally {
+                held.close();
+            }
+        }
+        actions.completed(action.getName(), response, System.nanoTime() - start);
+        return response;
+    }
+
+    private void execute(ActionRegistry.Action<?> action, JsonObject data, JsonObject response) {
+        String missing = action.missingField(data);
+        if (missing != null) {
+            response.addProperty("status", "error");
+            response.addProperty("message", "Missing field: " + missing);
+            return;
+        }
+        try {
+            action.execute(data, response);
+        } catch (PageRequest.InvalidCursorException e) {
+            response.addProperty("status", "error");
+            response.addProperty("message", e.getMessage());
+        } catch (JsonParseException e) {
+            response.addProperty("status", "error");
+            response.addProperty("message", "Invalid JSON format");
+            Log.warn("Invalid JSON: " + e.getMessage());
+        } catch (Exception e) {
+            response.addProperty("status", "error");
+            response.addProperty("message", "Server error: " + e.getMessage());
+            Log.error("Server error: " + e.getMessage());
+        }
+    }
+
+    private static String stringField(JsonObject data, String name) {
+        JsonElement value = data.get(name);
+        return value != null && value.isJsonPrimitive() ? value.getAsString() : null;
+    }
+
+    private void registerActions() {
+        actions.register("register", ActionRequests.Credentials::from, this::register).require("email", "username", "password");
+        actions.register("login", ActionRequests.Credentials::from, this::login).require("email", "password").readOnly();
+        actions.register("get_user", ActionRequests.UserRef::from, this::getUser).require("email").readOnly();
+        actions.register("update_user", ActionRequests.Credentials::from, this::updateUser).require("email", "username", "password");
+        actions.register("delete_user", ActionRequests.UserRef::from, this::deleteUser).require("email");
+        actions.register("like_music", ActionRequests.MusicRef::from, this::likeMusic).require("email", "music_name");
+        actions.register("unlike_music", ActionRequests.MusicRef::from, this::unlikeMusic).require("email", "music_name");
+        actions.register("list_liked_music", ActionRequests.UserRef::from, this::listLikedMusic).require("email").readOnly();
+        actions.register("share_playlist", ActionRequests.Share::from, this::sharePlaylist).require("email", "target_email", "playlist_name");
+        actions.register("list_users", ActionRequests.None::from, this::listUsers).readOnly();
+        actions.register("share_music", ActionRequests.Share::from, this::shareMusic).require("email", "target_email", "music_name");
+        actions.register("add_local_music", ActionRequests.LocalMusic::from, this::addLocalMusic).require("email", "title", "artist", "file");
+        actions.register("add_server_music", ActionRequests.MusicRef::from, this::addServerMusic).require("email", "music_name");
+        actions.register("list_user_musics", ActionRequests.UserRef::from, this::listUserMusics).require("email").readOnly();
+        actions.register("list_server_musics", ActionRequests.None::from, this::listServerMusics).readOnly();
+        actions.register("download_music", ActionRequests.Download::from, this::downloadMusic).require("name").readOnly();
+        actions.register("create_playlist", ActionRequests.PlaylistRef::from, this::createPlaylist).require("email", "name");
+        actions.register("delete_playlist", ActionRequests.PlaylistRef::from, this::deletePlaylist).require("email", "playlist_name");
+        actions.register("list_user_playlists", ActionRequests.UserRef::from, this::listUserPlaylists).require("email").readOnly();
+        actions.register("add_music_to_playlist", ActionRequests.PlaylistRef::from, this::addMusicToPlaylist).require("email", "playlist_name", "music_id");
+        actions.register("remove_music_from_playlist", ActionRequests.PlaylistRef::from, this::removeMusicFromPlaylist).require("email", "playlist_name", "music_id");
+        actions.register("remove_user_music", ActionRequests.MusicRef::from, this::removeUserMusic).require("email", "music_name");
+        actions.register("toggle_sharing", ActionRequests.Sharing::from, this::toggleSharing).require("email", "allow_sharing");
+        actions.register("get_music_by_id", ActionRequests.MusicById::from, this::getMusicById).require("id", "email").readOnly();
+        actions.register("search_music", ActionRequests.Search::from, this::searchMusic).require("query").readOnly()
+                .maxConcurrent(ServerConfig.MAX_CONCURRENT_SEARCHES).cpuBound();
+        actions.register("sync_since", ActionRequests.Sync::from, this::syncSince).require("email").readOnly();
+        actions.register("batch", ActionRequests.Batch::from, this::batch).require("requests").locksUsers().notBatchable()
+                .maxConcurrent(ServerConfig.MAX_CONCURRENT_BATCHES);
+        actions.register("server_stats", ActionRequests.None::from, this::serverStats).readOnly();
+    }
+
+    private void register(ActionRequests.Credentials request, JsonObject data, JsonObject response) {
+        boolean registered = userManager.HandelRegister(request.email, request.username, request.password);
+        response.addProperty("status", registered ? "success" : "error");
+        response.addProperty("message", registered ? "User registered" : "Email already exists");
+        if (registered) {
+            response.add("data", userAdapter.toJsonTree(userManager.getUserByEmail(request.email)));
+        }
+    }
+
+    private void login(ActionRequests.Credentials request, JsonObject data, JsonObject response) {
+        boolean loggedIn = userManager.HandelLogin(request.email, request.password);
+        response.addProperty("status", loggedIn ? "success" : "error");
+        response.addProperty("message", loggedIn ? "Login successful" : "Invalid credentials");
+        if (loggedIn) {
+            response.add("data", userAdapter.toJsonTree(userManager.getUserByEmail(request.email)));
+        }
+    }
+
+    private void getUser(ActionRequests.UserRef request, JsonObject data, JsonObject response) {
+        User user = userManager.getUserByEmail(request.email);
+        if (user != null) {
+            JsonObject userJson = new JsonObject();
+            userJson.addProperty("email", user.getEmail());
+            userJson.addProperty("username", user.getUsername());
+            userJson.addProperty("allowSharing", user.isAllowSharing());
+            response.add("data", userJson);
+            response.addProperty("status", "success");
+            response.addProperty("message", "User retrieved");
+        } else {
+            response.addProperty("status", "error");
+            response.addProperty("message", "User not found");
+        }
+    }
+
+    private void updateUser(ActionRequests.Credentials request, JsonObject data, JsonObject response) {
+        boolean updated = userManager.updateUser(request.email, request.username, request.password);
+        response.addProperty("status", updated ? "success" : "error");
+        response.addProperty("message", updated ? "User updated" : "Update failed");
+        if (updated) {
+            response.add("data", userAdapter.toJsonTree(userManager.getUserByEmail(request.email)));
+        }
+    }
+
+    private void deleteUser(ActionRequests.UserRef request, JsonObject data, JsonObject response) {
+        boolean deleted = userManager.deleteUser(request.email);
+        response.addProperty("status", deleted ? "success" : "error");
+        response.addProperty("message", deleted ? "User deleted" : "User not found");
+    }
+
+    private void likeMusic(ActionRequests.MusicRef request, JsonObject data, JsonObject response) {
+        String musicName = request.musicName.trim();
+        User user = userManager.getUserByEmail(request.email);
+        Music music = userManager.findMusicEverywhere(musicName, user);
+        if (music == null) {
+            response.addProperty("status", "error");
+            response.addProperty("message", "Music not found");
+            return;
+        }
+        boolean isAlreadyLiked = user.getLikedMusics().stream()
+                .anyMatch(m -> m.getTitle().trim().equalsIgnoreCase(musicName));
+        if (isAlreadyLiked) {
+            response.addProperty("status", "error");
+            response.addProperty("message", "Music already liked");
+            return;
+        }
+        boolean liked = user.likeMusic(music);
+        if (liked) {
+            music.addLike();
+            userManager.saveUser(user);
+            response.addProperty("status", "success");
+            response.addProperty("message", "Music liked successfully");
+        } else {
+            response.addProperty("status", "error");
+            response.addProperty("message", "Failed to like music");
+        }
+    }
+
+    private void unlikeMusic(ActionRequests.MusicRef request, JsonObject data, JsonObject response) {
+        String musicName = request.musicName.trim();
+        User user = userManager.getUserByEmail(request.email);
+        Music music = userManager.findMusicEverywhere(musicName, user);
+        boolean isLiked = user.getLikedMusics().stream()
+                .anyMatch(m -> m.getTitle().trim().equalsIgnoreCase(musicName));
+        if (!isLiked) {
+            response.addProperty("status", "error");
+            response.addProperty("message", "Music not liked");
+            return;
+        }
+        boolean unliked = user.unlikeMusic(musicName);
+        if (unliked) {
+            music.removeLike();
+            userManager.saveUser(user);
+            response.addProperty("status", "success");
+            response.addProperty("message", "Music unliked successfully");
+        } else {
+            response.addProperty("status", "error");
+            response.addProperty("message", "Failed to unlike music");
+        }
+    }
+
+    private void listLikedMusic(ActionRequests.UserRef request, JsonObject data, JsonObject response) {
+        User user = userManager.getUserByEmail(request.email);
+        if (user != null) {
+            Set<String> knownCovers = knownCovers(data);
+            JsonArray musicArray = new JsonArray();
+            for (Music music : user.getLikedMusics()) {
+                JsonObject musicJson = createMusicJson(music);
+                addCover(musicJson, music.getTitle(), knownCovers);
+                musicArray.add(musicJson);
+            }
+            response.add("data", musicArray);
+            response.addProperty("status", "success");
+            response.addProperty("message", "Liked music retrieved");
+        } else {
+            response.addProperty("status", "error");
+            response.addProperty("message", "User not found");
+        }
+    }
+
+    private void sharePlaylist(ActionRequests.Share request, JsonObject data, JsonObject response) {
+        String email = request.email;
+        String targetEmail = request.targetEmail;
+        User user = userManager.getUserByEmail(email);
+        User targetUser = userManager.getUserByEmail(targetEmail);
+        PlayList playlist = user != null ? user.findPlaylistByName(request.playlistName) : null;
+        if (user != null && targetUser != null && playlist != null && playlist.getCreatorEmail().equals(email)) {
+            if (targetUser.isAllowSharing()) {
+                PlayList shared = new PlayList(playlist.getName(), targetEmail);
+                for (Music music : playlist.getMusics()) {
+                    boolean addedToUser = userManager.addUserMusic(targetUser, music) != null;
+                    if (addedToUser) {
+                        shared.addMusic(music);
                     } else {
-                        response.addProperty("status", "error");
-                        response.addProperty("message", "Playlist, user, or target user not found, or user is not the creator");
+                        Log.debug("Music " + music.getTitle() + " already exists in target user's library");
                     }
-                    break;
                 }
-                case "list_users": {
-                    List<User> users = userManager.getUsers();
-                    JsonArray usersArray = new JsonArray();
-                    for (User user : users) {
-                        if (user.isAllowSharing()) {
-                            JsonObject userJson = new JsonObject();
-                            userJson.addProperty("email", user.getEmail());
-                            userJson.addProperty("username", user.getUsername());
-                            usersArray.add(userJson);
-                        }
-                    }
-                    response.add("data", usersArray);
+                targetUser.addPlaylist(shared);
+                userManager.saveUser(targetUser);
+                response.addProperty("status", "success");
+                response.addProperty("message", "Playlist shared with " + shared.getMusics().size() + " songs");
+            } else {
+                response.addProperty("status", "error");
+                response.addProperty("message", "Target user has disabled sharing");
+            }
+        } else {
+            response.addProperty("status", "error");
+            response.addProperty("message", "Playlist, user, or target user not found, or user is not the creator");
+        }
+    }
+
+    private void listUsers(ActionRequests.None request, JsonObject data, JsonObject response) {
+        JsonArray usersArray = new JsonArray();
+        for (User user : userManager.getUsers()) {
+            if (user.isAllowSharing()) {
+                JsonObject userJson = new JsonObject();
+                userJson.addProperty("email", user.getEmail());
+                userJson.addProperty("username", user.getUsername());
+                usersArray.add(userJson);
+            }
+        }
+        response.add("data", usersArray);
+        response.addProperty("status", "success");
+        response.addProperty("message", "Users retrieved");
+    }
+
+    private void shareMusic(ActionRequests.Share request, JsonObject data, JsonObject response) {
+        User user = userManager.getUserByEmail(request.email);
+        User targetUser = userManager.getUserByEmail(request.targetEmail);
+        Music music = userManager.findMusicEverywhere(request.musicName.trim(), user);
+        if (user != null && targetUser != null && music != null) {
+            if (targetUser.isAllowSharing()) {
+                boolean added = userManager.addUserMusic(targetUser, music) != null;
+                if (added) {
+                    userManager.saveUser(targetUser);
+                    response.add("data", createMusicJson(music));
                     response.addProperty("status", "success");
-                    response.addProperty("message", "Users retrieved");
-                    break;
-                }
-                case "share_music": {
-                    String email = data.get("email").getAsString();
-                    String targetEmail = data.get("target_email").getAsString();
-                    String musicName = data.get("music_name").getAsString().trim();
-                    User user = userManager.getUserByEmail(email);
-                    User targetUser = userManager.getUserByEmail(targetEmail);
-                    Music music = userManager.findMusicEverywhere(musicName, user);
-                    if (user != null && targetUser != null && music != null) {
-                        if (targetUser.isAllowSharing()) {
-                            boolean added = targetUser.addUserMusic(music);
-                            if (added) {
-                                DatabaseManager.saveUsers(userManager.getUsers());
-                                JsonObject dataResponse = createMusicJson(music);
-                                response.add("data", dataResponse);
-                                response.addProperty("status", "success");
-                                response.addProperty("message", "Music shared successfully");
-                            } else {
-                                response.addProperty("status", "success");
-                                response.addProperty("message", "Music already exists in target user's library, no action taken");
-                            }
-                        } else {
-                            response.addProperty("status", "error");
-                            response.addProperty("message", "Target user has disabled sharing");
-                        }
-                    } else {
-                        response.addProperty("status", "error");
-                        response.addProperty("message", "User, target user, or music not found");
-                    }
-                    break;
-                }
-                case "add_local_music": {
-                    String email = data.get("email").getAsString();
-                    String title = data.get("title").getAsString();
-                    String artist = data.get("artist").getAsString();
-                    String base64File = data.get("file").getAsString();
-                    String base64Cover = data.has("cover") ? data.get("cover").getAsString() : null;
-                    User user = userManager.getUserByEmail(email);
-                    if (user != null) {
-                        boolean songExists = user.getUserMusics().stream()
-                                .anyMatch(m -> m.getTitle().trim().equalsIgnoreCase(title.trim()) && m.getArtist().trim().equalsIgnoreCase(artist.trim()));
-                        if (songExists) {
-                            response.addProperty("status", "error");
-                            response.addProperty("message", "This song already exists in your library");
-                            break;
-                        }
-                        String musicFileName = title + ".mp3";
-                        String musicFilePath = MUSIC_DIR + File.separator + musicFileName;
-                        byte[] fileBytes = Base64.getDecoder().decode(base64File);
-                        try (FileOutputStream fos = new FileOutputStream(musicFilePath)) {
-                            fos.write(fileBytes);
-                        }
-                        String coverFileName = null;
-                        if (base64Cover != null && !base64Cover.isEmpty()) {
-                            coverFileName = title + "-cover.jpg";
-                            String coverFilePath = MUSIC_DIR + File.separator + coverFileName;
-                            byte[] coverBytes = Base64.getDecoder().decode(base64Cover);
-                            try (FileOutputStream fos = new FileOutputStream(coverFilePath)) {
-                                fos.write(coverBytes);
-                            }
-                        }
-                        Music music = new Music(title, artist, musicFileName, email);
-                        user.addUserMusic(music);
-                        DatabaseManager.saveUsers(userManager.getUsers());
-                        JsonObject dataResponse = createMusicJson(music);
-                        if (coverFileName != null) {
-                            File coverFile = new File(MUSIC_DIR + File.separator + coverFileName);
-                            if (coverFile.exists()) {
-                                byte[] coverBytes = Files.readAllBytes(coverFile.toPath());
-                                dataResponse.addProperty("cover", Base64.getEncoder().encodeToString(coverBytes));
-                            }
-                        }
-                        response.add("data", dataResponse);
-                        response.addProperty("status", "success");
-                        response.addProperty("message", "Local music added successfully" +
-                                (coverFileName != null ? " with cover" : ""));
-                    } else {
-                        response.addProperty("status", "error");
-                        response.addProperty("message", "User not found");
-                    }
-                    break;
-                }
-                case "add_server_music": {
-                    String email = data.get("email").getAsString();
-                    String musicName = data.get("music_name").getAsString().trim();
-                    User user = userManager.getUserByEmail(email);
-                    Music music = musicManager.findByName(musicName);
-                    if (user != null && music != null) {
-                        boolean added = user.addUserMusic(music);
-                        if (added) {
-                            DatabaseManager.saveUsers(userManager.getUsers());
-                            response.addProperty("status", "success");
-                            response.addProperty("message", "Server music added successfully");
-                        } else {
-                            response.addProperty("status", "error");
-                            response.addProperty("message", "Music already in user's music list");
-                        }
-                    } else {
-                        response.addProperty("status", "error");
-                        response.addProperty("message", "User or music not found");
-                    }
-                    break;
-                }
-                case "list_user_musics": {
-                    String email = data.get("email").getAsString();
-                    User user = userManager.getUserByEmail(email);
-                    if (user != null) {
-                        JsonArray musicArray = new JsonArray();
-                        for (Music music : user.getUserMusics()) {
-                            JsonObject musicJson = createMusicJson(music);
-                            String coverFileName = music.getTitle() + "-cover.jpg";
-                            File coverFile = new File(MUSIC_DIR + File.separator + coverFileName);
-                            if (coverFile.exists()) {
-                                byte[] coverBytes = Files.readAllBytes(coverFile.toPath());
-                                musicJson.addProperty("cover", Base64.getEncoder().encodeToString(coverBytes));
-                            }
-                            musicArray.add(musicJson);
-                        }
-                        response.add("data", musicArray);
-                        response.addProperty("status", "success");
-                        response.addProperty("message", "User musics retrieved");
-                    } else {
-                        response.addProperty("status", "error");
-                        response.addProperty("message", "User not found");
-                    }
-                    break;
-                }
-                case "list_server_musics": {
-                    List<Music> serverMusics = musicManager.getServerMusics();
-                    JsonArray musicArray = new JsonArray();
-                    for (Music music : serverMusics) {
-                        JsonObject musicJson = createMusicJson(music);
-                        String coverFileName = music.getTitle() + "-cover.jpg";
-                        File coverFile = new File(MUSIC_DIR + File.separator + coverFileName);
-                        if (coverFile.exists()) {
-                            byte[] coverBytes = Files.readAllBytes(coverFile.toPath());
-                            musicJson.addProperty("cover", Base64.getEncoder().encodeToString(coverBytes));
-                        }
-                        musicArray.add(musicJson);
-                    }
-                    response.add("data", musicArray);
+                    response.addProperty("message", "Music shared successfully");
+                } else {
                     response.addProperty("status", "success");
-                    response.addProperty("message", "Server musics retrieved");
-                    break;
-                }
-                case "download_music": {
-                    String musicName = data.get("name").getAsString().trim();
-                    String email = data.has("email") ? data.get("email").getAsString() : "";
-                    User user = email.isEmpty() ? null : userManager.getUserByEmail(email);
-                    Music music = musicManager.findByName(musicName);
-                    if (music == null && user != null) {
-                        music = user.getUserMusics().stream()
-                                .filter(m -> m.getTitle().trim().equalsIgnoreCase(musicName))
-                                .findFirst()
-                                .orElse(null);
-                    }
-                    if (music != null) {
-                        File file = new File(MUSIC_DIR + File.separator + music.getFilePath());
-                        if (file.exists()) {
-                            try {
-                                byte[] fileBytes = Files.readAllBytes(file.toPath());
-                                String base64File = Base64.getEncoder().encodeToString(fileBytes);
-                                JsonObject dataResponse = new JsonObject();
-                                dataResponse.addProperty("file", base64File);
-                                String coverFileName = music.getTitle() + "-cover.jpg";
-                                File coverFile = new File(MUSIC_DIR + File.separator + coverFileName);
-                                if (coverFile.exists()) {
-                                    byte[] coverBytes = Files.readAllBytes(coverFile.toPath());
-                                    dataResponse.addProperty("cover", Base64.getEncoder().encodeToString(coverBytes));
-                                }
-                                response.add("data", dataResponse);
-                                response.addProperty("status", "success");
-                                response.addProperty("message", "Music file retrieved");
-                            } catch (IOException e) {
-                                response.addProperty("status", "error");
-                                response.addProperty("message", "Error reading music file: " + e.getMessage());
-                            }
-                        } else {
-                            response.addProperty("status", "error");
-                            response.addProperty("message", "Music file not found on server");
-                        }
-                    } else {
-                        response.addProperty("status", "error");
-                        response.addProperty("message", "Music not found");
-                    }
-                    break;
-                }
-                case "create_playlist": {
-                    String email = data.get("email").getAsString();
-                    String name = data.get("name").getAsString();
-                    User user = userManager.getUserByEmail(email);
-                    if (user != null) {
-                        PlayList existingPlaylist = user.findPlaylistByName(name);
-                        if (existingPlaylist == null) {
-                            PlayList playlist = new PlayList(name.trim(), email);
-                            userManager.addPlaylistToUser(email, playlist);
-                            JsonObject dataResponse = new JsonObject();
-                            dataResponse.addProperty("id", playlist.getId());
-                            dataResponse.addProperty("name", playlist.getName());
-                            dataResponse.addProperty("creatorEmail", playlist.getCreatorEmail());
-                            JsonArray musicsArray = new JsonArray();
-                            dataResponse.add("musics", musicsArray);
-                            response.add("data", dataResponse);
-                            response.addProperty("status", "success");
-                            response.addProperty("message", "Playlist created successfully");
-                        } else {
-                            response.addProperty("status", "error");
-                            response.addProperty("message", "Playlist name already exists for this user");
-                        }
-                    } else {
-                        response.addProperty("status", "error");
-                        response.addProperty("message", "User not found");
-                    }
-                    break;
+                    response.addProperty("message", "Music already exists in target user's library, no action taken");
                 }
-                case "delete_playlist": {
-                    String email = data.get("email").getAsString();
-                    String playlistName = data.get("playlist_name").getAsString();
-                    User user = userManager.getUserByEmail(email);
-                    PlayList playlist = user != null ? user.findPlaylistByName(playlistName) : null;
-                    if (user != null && playlist != null && playlist.getCreatorEmail().equals(email)) {
-                        boolean removed = userManager.removePlaylistFromUser(email, playlistName);
-                        if (removed) {
-                            response.addProperty("status", "success");
-                            response.addProperty("message", "Playlist deleted successfully");
-                        } else {
-                            response.addProperty("status", "error");
-                            response.addProperty("message", "Playlist not found");
-                        }
-                    } else {
-                        response.addProperty("status", "error");
-                        response.addProperty("message", "User or playlist not found, or user is not the creator");
-                    }
-                    break;
+            } else {
+                response.addProperty("status", "error");
+                response.addProperty("message", "Target user has disabled sharing");
+            }
+        } else {
+            response.addProperty("status", "error");
+            response.addProperty("message", "User, target user, or music not found");
+        }
+    }
+
+    private void addLocalMusic(ActionRequests.LocalMusic request, JsonObject data, JsonObject response) throws Exception {
+        String title = request.title;
+        String artist = request.artist;
+        Path spooledFile = JsonCodec.fileOf(request.file);
+        String base64File = spooledFile == null ? request.file.getAsString() : null;
+        User user = userManager.getUserByEmail(request.email);
+        if (user != null) {
+            if (hasSong(user, title, artist)) {
+                response.addProperty("status", "error");
+                response.addProperty("message", "This song already exists in your library");
+                return;
+            }
+            String musicFileName = title + ".mp3";
+            String musicFilePath = MUSIC_DIR + File.separator + musicFileName;
+            if (spooledFile != null) {
+                Files.move(spooledFile, Paths.get(musicFilePath), StandardCopyOption.REPLACE_EXISTING);
+            } else {
+                byte[] fileBytes = CpuPool.call(() -> Base64.getDecoder().decode(base64File));
+                try (FileOutputStream fos = new FileOutputStream(musicFilePath)) {
+                    fos.write(fileBytes);
                 }
-                case "list_user_playlists": {
-                    String email = data.get("email").getAsString();
-                    User user = userManager.getUserByEmail(email);
-                    if (user != null) {
-                        List<PlayList> userPlaylists = userManager.getUserPlaylists(email);
-                        JsonArray playlistsArray = new JsonArray();
-                        for (PlayList playlist : userPlaylists) {
-                            JsonObject playlistJson = new JsonObject();
-                            playlistJson.addProperty("id", playlist.getId());
-                            playlistJson.addProperty("name", playlist.getName());
-                            playlistJson.addProperty("creatorEmail", playlist.getCreatorEmail());
-                            JsonArray musicsArray = new JsonArray();
-                            for (Music music : playlist.getMusics()) {
-                                JsonObject musicJson = createMusicJson(music);
-                                String coverFileName = music.getTitle() + "-cover.jpg";
-                                File coverFile = new File(MUSIC_DIR + File.separator + coverFileName);
-                                if (coverFile.exists()) {
-                                    try {
-                                        byte[] coverBytes = Files.readAllBytes(coverFile.toPath());
-                                        musicJson.addProperty("cover", Base64.getEncoder().encodeToString(coverBytes));
-                                    } catch (IOException e) {
-                                        System.out.println("Error reading cover file for music " + music.getTitle() + ": " + e.getMessage());
-                                    }
-                                }
-                                musicsArray.add(musicJson);
-                            }
-                            playlistJson.add("musics", musicsArray);
-                            playlistsArray.add(playlistJson);
-                        }
-                        response.add("data", playlistsArray);
-                        response.addProperty("status", "success");
-                        response.addProperty("message", "User playlists retrieved");
-                    } else {
-                        response.addProperty("status", "error");
-                        response.addProperty("message", "User not found");
+            }
+            addUploadedMusic(user, request.email, title, artist, musicFileName, request.cover, knownCovers(data), response);
+        } else {
+            response.addProperty("status", "error");
+            response.addProperty("message", "User not found");
+        }
+    }
+
+    private void addServerMusic(ActionRequests.MusicRef request, JsonObject data, JsonObject response) {
+        User user = userManager.getUserByEmail(request.email);
+        Music music = musicManager.findByName(request.musicName.trim());
+        if (user != null && music != null) {
+            boolean added = userManager.addUserMusic(user, music) != null;
+            if (added) {
+                userManager.saveUser(user);
+                response.addProperty("status", "success");
+                response.addProperty("message", "Server music added successfully");
+            } else {
+                response.addProperty("status", "error");
+                response.addProperty("message", "Music already in user's music list");
+            }
+        } else {
+            response.addProperty("status", "error");
+            response.addProperty("message", "User or music not found");
+        }
+    }
+
+    private void listUserMusics(ActionRequests.UserRef request, JsonObject data, JsonObject response) {
+        User user = userManager.getUserByEmail(request.email);
+        if (user != null) {
+            PageRequest page = PageRequest.from(data);
+            List<Music> musics = page.finish(page.slice(user.getUserMusics(), Music::getId), Music::getId, response);
+            response.add("data", createMusicArray(musics, page, knownCovers(data)));
+            response.addProperty("status", "success");
+            response.addProperty("message", "User musics retrieved");
+        } else {
+            response.addProperty("status", "error");
+            response.addProperty("message", "User not found");
+        }
+    }
+
+    private void listServerMusics(ActionRequests.None request, JsonObject data, JsonObject response) {
+        PageRequest page = PageRequest.from(data);
+        List<Music> serverMusics = page.isPaged()
+                ? musicManager.getServerMusicsAfter(page.getAfterId(), page.getLimit() + 1)
+                : musicManager.getServerMusics();
+        serverMusics = page.finish(serverMusics, Music::getId, response);
+        response.add("data", createMusicArray(serverMusics, page, knownCovers(data)));
+        response.addProperty("status", "success");
+        response.addProperty("message", "Server musics retrieved");
+    }
+
+    private void downloadMusic(ActionRequests.Download request, JsonObject data, JsonObject response) {
+        String email = request.email != null ? request.email : "";
+        User user = email.isEmpty() ? null : userManager.getUserByEmail(email);
+        Music music = userManager.findDownloadableMusic(request.name.trim(), user);
+        if (music != null) {
+            File file = new File(MUSIC_DIR + File.separator + music.getFilePath());
+            if (file.exists()) {
+                JsonObject dataResponse = new JsonObject();
+                dataResponse.add("file", JsonCodec.fileRef(file.toPath()));
+                addCover(dataResponse, music.getTitle(), knownCovers(data));
+                response.add("data", dataResponse);
+                response.addProperty("status", "success");
+                response.addProperty("message", "Music file retrieved");
+            } else {
+                response.addProperty("status", "error");
+                response.addProperty("message", "Music file not found on server");
+            }
+        } else {
+            response.addProperty("status", "error");
+            response.addProperty("message", "Music not found");
+        }
+    }
+
+    private void createPlaylist(ActionRequests.PlaylistRef request, JsonObject data, JsonObject response) {
+        String email = request.email;
+        String name = request.name;
+        User user = userManager.getUserByEmail(email);
+        if (user != null) {
+            PlayList existingPlaylist = user.findPlaylistByName(name);
+            if (existingPlaylist == null) {
+                PlayList playlist = new PlayList(name.trim(), email);
+                userManager.addPlaylistToUser(email, playlist);
+                JsonObject dataResponse = new JsonObject();
+                dataResponse.addProperty("id", playlist.getId());
+                dataResponse.addProperty("name", playlist.getName());
+                dataResponse.addProperty("creatorEmail", playlist.getCreatorEmail());
+                dataResponse.add("musics", new JsonArray());
+                response.add("data", dataResponse);
+                response.addProperty("status", "success");
+                response.addProperty("message", "Playlist created successfully");
+            } else {
+                response.addProperty("status", "error");
+                response.addProperty("message", "Playlist name already exists for this user");
+            }
+        } else {
+            response.addProperty("status", "error");
+            response.addProperty("message", "User not found");
+        }
+    }
+
+    private void deletePlaylist(ActionRequests.PlaylistRef request, JsonObject data, JsonObject response) {
+        String email = request.email;
+        String playlistName = request.playlistName;
+        User user = userManager.getUserByEmail(email);
+        PlayList playlist = user != null ? user.findPlaylistByName(playlistName) : null;
+        if (user != null && playlist != null && playlist.getCreatorEmail().equals(email)) {
+            boolean removed = userManager.removePlaylistFromUser(email, playlistName);
+            if (removed) {
+                response.addProperty("status", "success");
+                response.addProperty("message", "Playlist deleted successfully");
+            } else {
+                response.addProperty("status", "error");
+                response.addProperty("message", "Playlist not found");
+            }
+        } else {
+            response.addProperty("status", "error");
+            response.addProperty("message", "User or playlist not found, or user is not the creator");
+        }
+    }
+
+    private void listUserPlaylists(ActionRequests.UserRef request, JsonObject data, JsonObject response) {
+        User user = userManager.getUserByEmail(request.email);
+        if (user != null) {
+            Set<String> knownCovers = knownCovers(data);
+            PageRequest page = PageRequest.from(data);
+            List<PlayList> userPlaylists = page.finish(page.slice(user.getPlaylists(), PlayList::getId), PlayList::getId, response);
+            JsonArray playlistsArray = new JsonArray();
+            for (PlayList playlist : userPlaylists) {
+                playlistsArray.add(createPlaylistJson(playlist, page, knownCovers));
+            }
+            response.add("data", playlistsArray);
+            response.addProperty("status", "success");
+            response.addProperty("message", "User playlists retrieved");
+        } else {
+            response.addProperty("status", "error");
+            response.addProperty("message", "User not found");
+        }
+    }
+
+    private void addMusicToPlaylist(ActionRequests.PlaylistRef request, JsonObject data, JsonObject response) {
+        String email = request.email;
+        long musicId = request.musicId;
+        User user = userManager.getUserByEmail(email);
+        PlayList playlist = user != null ? user.findPlaylistByName(request.playlistName.trim()) : null;
+        if (user == null || playlist == null || !playlist.getCreatorEmail().equals(email)) {
+            response.addProperty("status", "error");
+            response.addProperty("message", "User or playlist not found, or user is not the creator");
+            return;
+        }
+        MusicCatalog.Entry entry = userManager.findCatalogEntry(musicId);
+        Music music = null;
+        if (entry != null && entry.isHeldBy(user)) {
+            music = entry.getMusic();
+        }
+        if (music == null) {
+            music = musicManager.findById(musicId);
+        }
+        if (music == null && entry != null && entry.isVisibleTo(user)) {
+            music = entry.getMusic();
+        }
+        if (music == null) {
+            response.addProperty("status", "error");
+            response.addProperty("message", "Music not found");
+            return;
+        }
+        boolean alreadyInPlaylist = playlist.getMusics().stream()
+                .anyMatch(m -> m.getId() == musicId);
+        if (alreadyInPlaylist) {
+            response.addProperty("status", "error");
+            response.addProperty("message", "Music already in playlist");
+            return;
+        }
+        boolean added = playlist.addMusic(music);
+        if (added) {
+            user.playlistChanged(playlist);
+            userManager.saveUser(user);
+            response.add("data", createPlaylistJson(playlist, knownCovers(data)));
+            response.addProperty("status", "success");
+            response.addProperty("message", "Music added to playlist successfully");
+        } else {
+            response.addProperty("status", "error");
+            response.addProperty("message", "Failed to add music to playlist");
+        }
+    }
+
+    private void removeMusicFromPlaylist(ActionRequests.PlaylistRef request, JsonObject data, JsonObject response) {
+        String email = request.email;
+        long musicId = request.musicId;
+        User user = userManager.getUserByEmail(email);
+        PlayList playlist = user != null ? user.findPlaylistByName(request.playlistName.trim()) : null;
+        if (user == null || playlist == null || !playlist.getCreatorEmail().equals(email)) {
+            response.addProperty("status", "error");
+            response.addProperty("message", "User or playlist not found, or user is not the creator");
+            return;
+        }
+        boolean musicExists = playlist.getMusics().stream()
+                .anyMatch(m -> m.getId() == musicId);
+        if (!musicExists) {
+            response.addProperty("status", "error");
+            response.addProperty("message", "Music not found in playlist");
+            return;
+        }
+        boolean removed = playlist.removeMusicById(musicId);
+        if (removed) {
+            user.playlistChanged(playlist);
+            userManager.saveUser(user);
+            response.add("data", createPlaylistJson(playlist, knownCovers(data)));
+            response.addProperty("status", "success");
+            response.addProperty("message", "Music removed from playlist successfully");
+        } else {
+            response.addProperty("status", "error");
+            response.addProperty("message", "Failed to remove music from playlist");
+        }
+    }
+
+    private void removeUserMusic(ActionRequests.MusicRef request, JsonObject data, JsonObject response) {
+        String musicName = request.musicName.trim();
+        User user = userManager.getUserByEmail(request.email);
+        if (user != null) {
+            boolean removed = userManager.removeUserMusic(user, musicName);
+            if (removed) {
+                user.unlikeMusic(musicName);
+                for (PlayList playlist : user.getPlaylists()) {
+                    boolean removedFromPlaylist = playlist.removeMusic(musicName);
+                    if (removedFromPlaylist) {
+                        user.playlistChanged(playlist);
+                        Log.debug("Removed music " + musicName + " from playlist " + playlist.getName());
                     }
-                    break;
                 }
-                case "add_music_to_playlist": {
-                    String email = data.get("email").getAsString();
-                    String playlistName = data.get("playlist_name").getAsString().trim();
-                    int musicId = data.get("music_id").getAsInt();
-                    User user = userManager.getUserByEmail(email);
-                    PlayList playlist = user != null ? user.findPlaylistByName(playlistName) : null;
-                    if (user == null || playlist == null || !playlist.getCreatorEmail().equals(email)) {
-                        response.addProperty("status", "error");
-                        response.addProperty("message", "User or playlist not found, or user is not the creator");
-                        break;
-                    }
-                    Music music = null;
-                    music = user.getUserMusics().stream()
-                            .filter(m -> m.getId() == musicId)
-                            .findFirst()
-                            .orElse(null);
-                    if (music == null) {
-                        music = musicManager.getServerMusics().stream()
-                                .filter(m -> m.getId() == musicId)
-                                .findFirst()
-                                .orElse(null);
-                    }
-                    if (music == null) {
-                        for (User otherUser : userManager.getUsers()) {
-                            if (otherUser.isAllowSharing() && !otherUser.getEmail().equals(email)) {
-                                music = otherUser.getUserMusics().stream()
-                                        .filter(m -> m.getId() == musicId)
-                                        .findFirst()
-                                        .orElse(null);
-                                if (music != null) break;
-                            }
-                        }
-                    }
-                    if (music == null) {
-                        response.addProperty("status", "error");
-                        response.addProperty("message", "Music not found");
-                        break;
-                    }
-                    boolean alreadyInPlaylist = playlist.getMusics().stream()
-                            .anyMatch(m -> m.getId() == musicId);
-                    if (alreadyInPlaylist) {
-                        response.addProperty("status", "error");
-                        response.addProperty("message", "Music already in playlist");
-                        break;
-                    }
-                    boolean added = playlist.addMusic(music);
-                    if (added) {
-                        DatabaseManager.saveUsers(userManager.getUsers());
-                        JsonObject playlistJson = new JsonObject();
-                        playlistJson.addProperty("id", playlist.getId());
-                        playlistJson.addProperty("name", playlist.getName());
-                        playlistJson.addProperty("creatorEmail", playlist.getCreatorEmail());
-                        JsonArray musicsArray = new JsonArray();
-                        for (Music m : playlist.getMusics()) {
-                            JsonObject musicJson = createMusicJson(m);
-                            String coverFileName = m.getTitle() + "-cover.jpg";
-                            File coverFile = new File(MUSIC_DIR + File.separator + coverFileName);
-                            if (coverFile.exists()) {
-                                try {
-                                    byte[] coverBytes = Files.readAllBytes(coverFile.toPath());
-                                    musicJson.addProperty("cover", Base64.getEncoder().encodeToString(coverBytes));
-                                } catch (IOException e) {
-                                    System.out.println("Error reading cover file for music " + m.getTitle() + ": " + e.getMessage());
-                                }
-                            }
-                            musicsArray.add(musicJson);
-                        }
-                        playlistJson.add("musics", musicsArray);
-                        response.add("data", playlistJson);
-                        response.addProperty("status", "success");
-                        response.addProperty("message", "Music added to playlist successfully");
-                    } else {
-                        response.addProperty("status", "error");
-                        response.addProperty("message", "Failed to add music to playlist");
-                    }
-                    break;
+                userManager.saveUser(user);
+                response.addProperty("status", "success");
+                response.addProperty("message", "Music removed from user, liked list, and playlists successfully");
+            } else {
+                response.addProperty("status", "error");
+                response.addProperty("message", "Music not found in user's list");
+            }
+        } else {
+            response.addProperty("status", "error");
+            response.addProperty("message", "User not found");
+        }
+    }
+
+    private void toggleSharing(ActionRequests.Sharing request, JsonObject data, JsonObject response) {
+        User user = userManager.getUserByEmail(request.email);
+        if (user != null) {
+            user.setAllowSharing(request.allowSharing);
+            userManager.saveUser(user);
+            response.addProperty("status", "success");
+            response.addProperty("message", "Sharing settings updated");
+        } else {
+            response.addProperty("status", "error");
+            response.addProperty("message", "User not found");
+        }
+    }
+
+    private void getMusicById(ActionRequests.MusicById request, JsonObject data, JsonObject response) {
+        MusicCatalog.Entry entry = userManager.findCatalogEntry(request.id);
+        Music music = entry != null ? entry.getMusic() : musicManager.findById(request.id);
+        if (music != null) {
+            JsonObject musicJson = createMusicJson(music);
+            addCover(musicJson, music.getTitle(), knownCovers(data));
+            response.add("data", musicJson);
+            response.addProperty("status", "success");
+            response.addProperty("message", "Music retrieved");
+        } else {
+            response.addProperty("status", "error");
+            response.addProperty("message", "Music not found");
+        }
+    }
+
+    private void searchMusic(ActionRequests.Search request, JsonObject data, JsonObject response) {
+        String email = request.email != null ? request.email : "";
+        User user = email.isEmpty() ? null : userManager.getUserByEmail(email);
+        int limit = request.limit != null ? Math.max(1, Math.min(MAX_SEARCH_RESULTS, request.limit)) : 20;
+        Set<String> knownCovers = knownCovers(data);
+        PageRequest page = PageRequest.from(data);
+        JsonArray results = new JsonArray();
+        for (SearchIndex.Hit hit : userManager.searchMusic(request.query, user, limit)) {
+            JsonObject musicJson = page.project(createMusicJson(hit.getMusic()));
+            musicJson.addProperty("score", hit.getScore());
+            musicJson.addProperty("source", hit.isServerMusic() ? "server" : "user");
+            if (page.includes("cover")) {
+                addCover(musicJson, hit.getMusic().getTitle(), knownCovers);
+            }
+            results.add(musicJson);
+        }
+        response.add("data", results);
+        response.addProperty("status", "success");
+        response.addProperty("message", "Search results retrieved");
+    }
+
+    private void syncSince(ActionRequests.Sync request, JsonObject data, JsonObject response) {
+        User user = userManager.getUserByEmail(request.email);
+        if (user == null) {
+            response.addProperty("status", "error");
+            response.addProperty("message", "User not found");
+            return;
+        }
+        response.add("data", createSyncJson(user, request.since, knownCovers(data)));
+        response.addProperty("status", "success");
+        response.addProperty("message", "Changes retrieved");
+    }
+
+    private void batch(ActionRequests.Batch request, JsonObject data, JsonObject response) {
+        JsonArray requests = request.requests;
+        if (requests.size() > MAX_BATCH_SIZE) {
+            response.addProperty("status", "error");
+            response.addProperty("message", "Batch exceeds " + MAX_BATCH_SIZE + " requests");
+            return;
+        }
+        JsonArray results = new JsonArray();
+        int failed = 0;
+        userManager.beginBatch();
+        try {
+            for (JsonElement element : requests) {
+                JsonObject result = runBatchItem(element);
+                if (!"success".equals(stringField(result, "status"))) {
+                    failed++;
                 }
-                case "remove_music_from_playlist": {
-                    String email = data.get("email").getAsString();
-                    String playlistName = data.get("playlist_name").getAsString().trim();
-                    int musicId = data.get("music_id").getAsInt();
-                    User user = userManager.getUserByEmail(email);
-                    PlayList playlist = user != null ? user.findPlaylistByName(playlistName) : null;
-                    if (user == null || playlist == null || !playlist.getCreatorEmail().equals(email)) {
-                        response.addProperty("status", "error");
-                        response.addProperty("message", "User or playlist not found, or user is not the creator");
-                        break;
-                    }
-                    boolean musicExists = playlist.getMusics().stream()
-                            .anyMatch(m -> m.getId() == musicId);
-                    if (!musicExists) {
-                        response.addProperty("status", "error");
-                        response.addProperty("message", "Music not found in playlist");
-                        break;
-                    }
+                results.add(result);
+            }
+        } finally {
+            userManager.commitBatch();
+        }
+        response.add("data", results);
+        response.addProperty("status", "success");
+        response.addProperty("message", "Batch processed, " + failed + " of " + requests.size() + " failed");
+    }
 
-                    boolean removed = playlist.removeMusicById(musicId);
-                    if (removed) {
-                        DatabaseManager.saveUsers(userManager.getUsers());
-
-                        JsonObject playlistJson = new JsonObject();
-                        playlistJson.addProperty("id", playlist.getId());
-                        playlistJson.addProperty("name", playlist.getName());
-                        playlistJson.addProperty("creatorEmail", playlist.getCreatorEmail());
-                        JsonArray musicsArray = new JsonArray();
-                        for (Music m : playlist.getMusics()) {
-                            JsonObject musicJson = createMusicJson(m);
-                            String coverFileName = m.getTitle() + "-cover.jpg";
-                            File coverFile = new File(MUSIC_DIR + File.separator + coverFileName);
-                            if (coverFile.exists()) {
-                                try {
-                                    byte[] coverBytes = Files.readAllBytes(coverFile.toPath());
-                                    musicJson.addProperty("cover", Base64.getEncoder().encodeToString(coverBytes));
-                                } catch (IOException e) {
-                                    System.out.println("Error reading cover file for music " + m.getTitle() + ": " + e.getMessage());
-                                }
-                            }
-                            musicsArray.add(musicJson);
-                        }
-                        playlistJson.add("musics", musicsArray);
-                        response.add("data", playlistJson);
-                        response.addProperty("status", "success");
-                        response.addProperty("message", "Music removed from playlist successfully");
-                    } else {
-                        response.addProperty("status", "error");
-                        response.addProperty("message", "Failed to remove music from playlist");
-                    }
-                    break;
+    private JsonObject runBatchItem(JsonElement element) {
+        if (!element.isJsonObject()) {
+            return batchItemError(null, "Batch item must be a JSON object");
+        }
+        JsonObject subRequest = element.getAsJsonObject();
+        String subAction = stringField(subRequest, "action");
+        if (subAction == null) {
+            return batchItemError(subRequest, "Missing field: action");
+        }
+        ActionRegistry.Action<?> action = actions.find(subAction);
+        if (STREAMING_ACTIONS.contains(subAction) || action != null && !action.isBatchable()) {
+            return batchItemError(subRequest, "Action not allowed in batch");
+        }
+        try {
+            return handleRequest(subRequest);
+        } catch (RuntimeException e) {
+            Log.error("Error in batch item " + subAction, e);
+            return batchItemError(subRequest, "Server error: " + e.getMessage());
+        }
+    }
+
+    private static JsonObject batchItemError(JsonObject subRequest, String message) {
+        String requestId = subRequest != null ? stringField(subRequest, "requestId") : null;
+        JsonObject result = new JsonObject();
+        result.addProperty("requestId", requestId != null ? requestId : "");
+        result.addProperty("status", "error");
+        result.addProperty("message", message);
+        return result;
+    }
+
+    private void serverStats(ActionRequests.None request, JsonObject data, JsonObject response) {
+        response.add("data", ServerStats.snapshot());
+        response.addProperty("status", "success");
+        response.addProperty("message", "Server stats retrieved");
+    }
+
+    private JsonObject createSyncJson(User user, long since, Set<String> knownCovers) {
+        JsonObject syncJson = new JsonObject();
+        long version = user.getVersion();
+        syncJson.addProperty("version", version);
+        if (!user.canSyncFrom(since)) {
+            syncJson.addProperty("reset", true);
+            return syncJson;
+        }
+        List<UserChange> changes = user.getChangesSince(since);
+        syncJson.addProperty("reset", false);
+        Map<String, Map<Long, String>> latest = new LinkedHashMap<>();
+        for (UserChange change : changes) {
+            Map<Long, String> ops = latest.computeIfAbsent(change.getCollection(), k -> new LinkedHashMap<>());
+            ops.remove(change.getItemId());
+            ops.put(change.getItemId(), change.getOp());
+        }
+        for (Map.Entry<String, Map<Long, String>> collection : latest.entrySet()) {
+            JsonArray upserts = new JsonArray();
+            JsonArray removed = new JsonArray();
+            for (Map.Entry<Long, String> op : collection.getValue().entrySet()) {
+                if (op.getValue().equals(UserChange.REMOVE)) {
+                    removed.add(op.getKey());
+                    continue;
                 }
-                case "remove_user_music": {
-                    String email = data.get("email").getAsString();
-                    String musicName = data.get("music_name").getAsString().trim();
-                    User user = userManager.getUserByEmail(email);
-                    if (user != null) {
-                        boolean removed = user.removeUserMusic(musicName);
-                        if (removed) {
-                            user.unlikeMusic(musicName);
-                            List<PlayList> playlists = user.getPlaylists();
-                            for (PlayList playlist : playlists) {
-                                boolean removedFromPlaylist = playlist.removeMusic(musicName);
-                                if (removedFromPlaylist) {
-                                    System.out.println("Removed music " + musicName + " from playlist " + playlist.getName());
-                                }
-                            }
-                            DatabaseManager.saveUsers(userManager.getUsers());
-                            response.addProperty("status", "success");
-                            response.addProperty("message", "Music removed from user, liked list, and playlists successfully");
-                        } else {
-                            response.addProperty("status", "error");
-                            response.addProperty("message", "Music not found in user's list");
-                        }
-                    } else {
-                        response.addProperty("status", "error");
-                        response.addProperty("message", "User not found");
-                    }
-                    break;
+                JsonObject item = createSyncItem(user, collection.getKey(), op.getKey(), knownCovers);
+                if (item != null) {
+                    upserts.add(item);
+                } else {
+                    removed.add(op.getKey());
                 }
-                case "toggle_sharing": {
-                    String email = data.get("email").getAsString();
-                    boolean allowSharing = data.get("allow_sharing").getAsBoolean();
-                    User user = userManager.getUserByEmail(email);
-                    if (user != null) {
-                        user.setAllowSharing(allowSharing);
-                        DatabaseManager.saveUsers(userManager.getUsers());
-                        response.addProperty("status", "success");
-                        response.addProperty("message", "Sharing settings updated");
-                    } else {
-                        response.addProperty("status", "error");
-                        response.addProperty("message", "User not found");
+            }
+            JsonObject collectionJson = new JsonObject();
+            collectionJson.add("upserts", upserts);
+            collectionJson.add("removed", removed);
+            syncJson.add(collection.getKey(), collectionJson);
+        }
+        return syncJson;
+    }
+
+    private JsonObject createSyncItem(User user, String collection, long itemId, Set<String> knownCovers) {
+        switch (collection) {
+            case UserChange.PROFILE: {
+                JsonObject userJson = new JsonObject();
+                userJson.addProperty("email", user.getEmail());
+                userJson.addProperty("username", user.getUsername());
+                userJson.addProperty("allowSharing", user.isAllowSharing());
+                return userJson;
+            }
+            case UserChange.PLAYLISTS: {
+                for (PlayList playlist : user.getPlaylists()) {
+                    if (playlist.getId() == itemId) {
+                        return createPlaylistJson(playlist, knownCovers);
                     }
-                    break;
                 }
-                case "get_music_by_id": {
-                    int musicId = data.get("id").getAsInt();
-                    String email = data.get("email").getAsString();
-                    User user = userManager.getUserByEmail(email);
-                    Music music = null;
-                    if (user != null) {
-                        music = user.getUserMusics().stream()
-                                .filter(m -> m.getId() == musicId)
-                                .findFirst()
-                                .orElse(null);
-                    }
-                    if (music == null) {
-                        for (User u : userManager.getUsers()) {
-                            music = u.getUserMusics().stream()
-                                    .filter(m -> m.getId() == musicId)
-                                    .findFirst()
-                                    .orElse(null);
-                            if (music != null) break;
-                        }
-                    }
-                    if (music == null) {
-                        music = musicManager.getServerMusics().stream()
-                                .filter(m -> m.getId() == musicId)
-                                .findFirst()
-                                .orElse(null);
-                    }
-                    if (music != null) {
+                return null;
+            }
+            default: {
+                List<Music> musics = collection.equals(UserChange.LIKED_MUSICS) ? user.getLikedMusics() : user.getUserMusics();
+                for (Music music : musics) {
+                    if (music.getId() == itemId) {
                         JsonObject musicJson = createMusicJson(music);
-                        String coverFileName = music.getTitle() + "-cover.jpg";
-                        File coverFile = new File(MUSIC_DIR + File.separator + coverFileName);
-                        if (coverFile.exists()) {
-                            try {
-                                byte[] coverBytes = Files.readAllBytes(coverFile.toPath());
-                                musicJson.addProperty("cover", Base64.getEncoder().encodeToString(coverBytes));
-                            } catch (IOException e) {
-                                System.out.println("Error reading cover file for music " + music.getTitle() + ": " + e.getMessage());
-                            }
-                        }
-                        response.add("data", musicJson);
-                        response.addProperty("status", "success");
-                        response.addProperty("message", "Music retrieved");
-                    } else {
-                        response.addProperty("status", "error");
-                        response.addProperty("message", "Music not found");
+                        addCover(musicJson, music.getTitle(), knownCovers);
+                        return musicJson;
                     }
-                    break;
                 }
-                default: {
-                    response.addProperty("status", "error");
-                    response.addProperty("message", "Unknown action");
-                    break;
+                return null;
+            }
+        }
+    }
+
+    private Set<String> knownCovers(JsonObject data) {
+        Set<String> knownCovers = new HashSet<>();
+        if (data.has("known_covers")) {
+            for (JsonElement hash : data.getAsJsonArray("known_covers")) {
+                knownCovers.add(hash.getAsString());
+            }
+        }
+        return knownCovers;
+    }
+
+    private void addCover(JsonObject musicJson, String title, Set<String> knownCovers) {
+        try {
+            CoverCache.Cover cover = coverCache.get(title);
+            if (cover != null) {
+                musicJson.addProperty("coverHash", cover.getHash());
+                if (!knownCovers.contains(cover.getHash())) {
+                    musicJson.addProperty("cover", cover.getBase64());
                 }
             }
-        } catch (JsonParseException e) {
-            response.addProperty("status", "error");
-            response.addProperty("message", "Invalid JSON format");
-            System.out.println("Invalid JSON: " + e.getMessage());
-        } catch (Exception e) {
-            response.addProperty("status", "error");
-            response.addProperty("message", "Server error: " + e.getMessage());
-            System.out.println("Server error: " + e.getMessage());
+        } catch (IOException e) {
+            Log.warn("Error reading cover file for music " + title + ": " + e.getMessage());
+        }
+    }
+
+    private JsonObject createPlaylistJson(PlayList playlist, Set<String> knownCovers) {
+        return createPlaylistJson(playlist, PageRequest.from(new JsonObject()), knownCovers);
+    }
+
+    private JsonObject createPlaylistJson(PlayList playlist, PageRequest page, Set<String> knownCovers) {
+        JsonObject playlistJson = new JsonObject();
+        playlistJson.addProperty("id", playlist.getId());
+        playlistJson.addProperty("name", playlist.getName());
+        playlistJson.addProperty("creatorEmail", playlist.getCreatorEmail());
+        playlistJson.add("musics", createMusicArray(playlist.getMusics(), page, knownCovers));
+        return playlistJson;
+    }
+
+    private JsonArray createMusicArray(List<Music> musics, PageRequest page, Set<String> knownCovers) {
+        JsonArray musicArray = new JsonArray();
+        for (Music music : musics) {
+            JsonObject musicJson = page.project(createMusicJson(music));
+            if (page.includes("cover")) {
+                addCover(musicJson, music.getTitle(), knownCovers);
+            }
+            musicArray.add(musicJson);
         }
-        String responseString = response.toString();
-        System.out.println("Sending response: " + responseString);
-        return responseString;
+        return musicArray;
     }
 
     private JsonObject createMusicJson(Music music) {
@@ -737,6 +1046,12 @@ public class RequestHandeler {
         musicJson.addProperty("artist", music.getArtist());
         musicJson.addProperty("filePath", music.getFilePath());
         musicJson.addProperty("uploaderEmail", music.getUploaderEmail());
+        if (music.isMetadataPending()) {
+            musicJson.addProperty("metadataPending", true);
+        } else if (music.getDurationSeconds() > 0) {
+            musicJson.addProperty("durationSeconds", music.getDurationSeconds());
+            musicJson.addProperty("bitrate", music.getBitrate());
+        }
         musicJson.addProperty("addedAt", new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss").format(new Date()));
         return musicJson;
     }
@@ -0,0 +1,229 @@
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+public class SearchIndex {
+    private static final int TITLE_FIELD = 1;
+    private static final int ARTIST_FIELD = 2;
+    private static final int MIN_FUZZY_LENGTH = 4;
+    private final LongHashMap<Document> documents = new LongHashMap<>();
+    private final TreeMap<String, Map<Long, Integer>> postings = new TreeMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private static class Document {
+        private final Music music;
+        private final MusicCatalog.Entry entry;
+        private final Set<String> tokens;
+
+        private Document(Music music, MusicCatalog.Entry entry, Set<String> tokens) {
+            this.music = music;
+            this.entry = entry;
+            this.tokens = tokens;
+        }
+    }
+
+    public static class Hit {
+        private final Music music;
+        private final boolean serverMusic;
+        private final int score;
+
+        private Hit(Music music, boolean serverMusic, int score) {
+            this.music = music;
+            this.serverMusic = serverMusic;
+            this.score = score;
+        }
+
+        public Music getMusic() {
+            return music;
+        }
+
+        public boolean isServerMusic() {
+            return serverMusic;
+        }
+
+        public int getScore() {
+            return score;
+        }
+    }
+
+    public static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFD)
+                .replaceAll("\\p{M}+", "")
+                .toLowerCase(Locale.ROOT);
+        for (String token : normalized.split("[^\\p{L}\\p{N}]+")) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    public void add(Music music, MusicCatalog.Entry entry) {
+        lock.writeLock().lock();
+        try {
+            removeDocument(music.getId());
+            Set<String> tokens = new HashSet<>();
+            addField(music.getId(), music.getTitle(), TITLE_FIELD, tokens);
+            addField(music.getId(), music.getArtist(), ARTIST_FIELD, tokens);
+            documents.put(music.getId(), new Document(music, entry, tokens));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(long musicId) {
+        lock.writeLock().lock();
+        try {
+            removeDocument(musicId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public List<Hit> search(String query, User requester, int limit) {
+        List<String> queryTokens = tokenize(query);
+        if (queryTokens.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Map<Long, Integer> scores = null;
+        lock.readLock().lock();
+        try {
+            for (String queryToken : queryTokens) {
+                Map<Long, Integer> tokenScores = scoreToken(queryToken);
+                if (scores == null) {
+                    scores = tokenScores;
+                } else {
+                    scores.keySet().retainAll(tokenScores.keySet());
+                    for (Map.Entry<Long, Integer> entry : scores.entrySet()) {
+                        entry.setValue(entry.getValue() + tokenScores.get(entry.getKey()));
+                    }
+                }
+                if (scores.isEmpty()) {
+                    return new ArrayList<>();
+                }
+            }
+            List<Hit> hits = new ArrayList<>();
+            for (Map.Entry<Long, Integer> entry : scores.entrySet()) {
+                Document document = documents.get(entry.getKey());
+                if (document.entry == null || document.entry.isVisibleTo(requester)) {
+                    hits.add(new Hit(document.music, document.entry == null, entry.getValue()));
+                }
+            }
+            hits.sort((a, b) -> {
+                if (a.score != b.score) {
+                    return Integer.compare(b.score, a.score);
+                }
+                if (a.serverMusic != b.serverMusic) {
+                    return a.serverMusic ? -1 : 1;
+                }
+                if (a.music.getLikes() != b.music.getLikes()) {
+                    return Integer.compare(b.music.getLikes(), a.music.getLikes());
+                }
+                return Long.compare(a.music.getId(), b.music.getId());
+            });
+            List<Hit> results = new ArrayList<>();
+            Set<String> seen = new HashSet<>();
+            for (Hit hit : hits) {
+                String key = String.join(" ", tokenize(hit.music.getTitle())) + "|" + String.join(" ", tokenize(hit.music.getArtist()));
+                if (seen.add(key)) {
+                    results.add(hit);
+                    if (results.size() == limit) {
+                        break;
+                    }
+                }
+            }
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private Map<Long, Integer> scoreToken(String queryToken) {
+        Map<Long, Integer> scores = new HashMap<>();
+        for (Map.Entry<String, Map<Long, Integer>> entry : postings.subMap(queryToken, true, queryToken + Character.MAX_VALUE, true).entrySet()) {
+            int weight = entry.getKey().equals(queryToken) ? 3 : 2;
+            merge(scores, entry.getValue(), weight);
+        }
+        if (scores.isEmpty() && queryToken.length() >= MIN_FUZZY_LENGTH) {
+            String first = queryToken.substring(0, 1);
+            for (Map.Entry<String, Map<Long, Integer>> entry : postings.subMap(first, true, first + Character.MAX_VALUE, true).entrySet()) {
+                if (withinOneEdit(queryToken, entry.getKey())) {
+                    merge(scores, entry.getValue(), 1);
+                }
+            }
+        }
+        return scores;
+    }
+
+    private static void merge(Map<Long, Integer> scores, Map<Long, Integer> docs, int weight) {
+        for (Map.Entry<Long, Integer> doc : docs.entrySet()) {
+            int fieldWeight = (doc.getValue() & TITLE_FIELD) != 0 ? 2 : 1;
+            scores.merge(doc.getKey(), weight * fieldWeight, Math::max);
+        }
+    }
+
+    private void addField(long musicId, String text, int field, Set<String> tokens) {
+        for (String token : tokenize(text)) {
+            postings.computeIfAbsent(token, k -> new HashMap<>()).merge(musicId, field, (a, b) -> a | b);
+            tokens.add(token);
+        }
+    }
+
+    private void removeDocument(long musicId) {
+        Document document = documents.remove(musicId);
+        if (document == null) {
+            return;
+        }
+        for (String token : document.tokens) {
+            Map<Long, Integer> docs = postings.get(token);
+            if (docs != null) {
+                docs.remove(musicId);
+                if (docs.isEmpty()) {
+                    postings.remove(token);
+                }
+            }
+        }
+    }
+
+    private static boolean withinOneEdit(String a, String b) {
+        int lengthDiff = a.length() - b.length();
+        if (Math.abs(lengthDiff) > 1) {
+            return false;
+        }
+        int i = 0;
+        int j = 0;
+        boolean edited = false;
+        while (i < a.length() && j < b.length()) {
+            if (a.charAt(i) == b.charAt(j)) {
+                i++;
+                j++;
+                continue;
+            }
+            if (edited) {
+                return false;
+            }
+            edited = true;
+            if (lengthDiff > 0) {
+                i++;
+            } else if (lengthDiff < 0) {
+                j++;
+            } else {
+                i++;
+                j++;
+            }
+        }
+        return !edited || (i == a.length() && j == b.length());
+    }
+}
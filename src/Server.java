@@ -1,26 +1,80 @@
+import java.io.BufferedWriter;
 import java.io.IOException;
-import java.net.ServerSocket;
+import java.io.OutputStreamWriter;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 
 public class Server {
-    private static final int PORT = 12345;
-
-    private static final ExecutorService threadPool = Executors.newFixedThreadPool(50);
+    private static final ExecutorService threadPool = ServerConfig.isVirtualThreadMode()
+            ? Executors.newVirtualThreadPerTaskExecutor()
+            : Executors.newFixedThreadPool(ServerConfig.POOL_SIZE);
+    private static final Semaphore connectionPermits = new Semaphore(ServerConfig.MAX_CONNECTIONS);
 
     public static void start() {
-        try (ServerSocket serverSocket = new ServerSocket(PORT)) {
-            System.out.println("Server started on port " + PORT);
+        MusicManager musicManager = new MusicManager();
+        UserManager userManager = new UserManager();
+        userManager.setMusicManager(musicManager);
+        RequestHandeler requestHandeler = new RequestHandeler(userManager, musicManager);
+
+        ServerStats.trackQueue("cpu", CpuPool::getQueueDepth);
+        if (ServerConfig.isNioMode()) {
+            NioServer nioServer = new NioServer(requestHandeler);
+            ServerStats.trackConnections(nioServer::getConnectionCount);
+            ServerStats.trackQueue("requests", nioServer::getQueueDepth);
+            nioServer.run();
+            return;
+        }
+        ServerStats.trackConnections(Server::getActiveConnections);
+        ServerStats.trackQueue("connections", () -> ServerStats.queueDepth(threadPool));
+        ServerStats.trackQueue("requests", ClientHandeler::getQueueDepth);
+
+        try (ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+            serverChannel.bind(new InetSocketAddress(ServerConfig.PORT));
+            Log.info("Server started on port " + ServerConfig.PORT + " (" + ServerConfig.EXECUTION_MODE + " threads)");
 
             while (true) {
-                Socket clientSocket = serverSocket.accept();
-                System.out.println("Client connected: " + clientSocket.getInetAddress());
+                Socket clientSocket = serverChannel.accept().socket();
+                if (!connectionPermits.tryAcquire()) {
+                    rejectBusy(clientSocket);
+                    continue;
+                }
+                Log.info("Client connected: " + clientSocket.getInetAddress());
+                clientSocket.setSoTimeout(ServerConfig.IDLE_TIMEOUT_MS);
 
-                threadPool.execute(new ClientHandeler(clientSocket));
+                ClientHandeler handler = new ClientHandeler(clientSocket, requestHandeler);
+                threadPool.execute(() -> {
+                    try {
+                        handler.run();
+                    } finally {
+                        connectionPermits.release();
+                    }
+                });
             }
         } catch (IOException e) {
-            System.out.println("Server error: " + e.getMessage());
+            Log.error("Server error: " + e.getMessage());
+        }
+    }
+
+    public static int getActiveConnections() {
+        return ServerConfig.MAX_CONNECTIONS - connectionPermits.availablePermits();
+    }
+
+    private static void rejectBusy(Socket clientSocket) {
+        try (BufferedWriter out = new BufferedWriter(new OutputStreamWriter(clientSocket.getOutputStream(), StandardCharsets.UTF_8))) {
+            out.write("{\"requestId\":\"\",\"status\":\"error\",\"message\":\"Server busy, try again later\"}");
+            out.newLine();
+        } catch (IOException e) {
+            Log.warn("Error rejecting client: " + e.getMessage());
+        } finally {
+            try {
+                clientSocket.close();
+            } catch (IOException ignored) {
+            }
         }
     }
 }
@@ -0,0 +1,20 @@
+public class ServerConfig {
+    public static final int PORT = Integer.getInteger("server.port", 12345);
+    public static final String EXECUTION_MODE = System.getProperty("server.mode", "virtual");
+    public static final int POOL_SIZE = Integer.getInteger("server.poolSize", 50);
+    public static final int MAX_CONNECTIONS = Integer.getInteger("server.maxConnections", 10000);
+    public static final int IDLE_TIMEOUT_MS = Integer.getInteger("server.idleTimeoutMs", 5 * 60 * 1000);
+    public static final int MAX_IN_FLIGHT = Integer.getInteger("server.maxInFlight", 8);
+    public static final int CPU_THREADS = Integer.getInteger("server.cpuThreads", Runtime.getRuntime().availableProcessors());
+    public static final int CPU_QUEUE_SIZE = Integer.getInteger("server.cpuQueueSize", 1024);
+    public static final int MAX_CONCURRENT_SEARCHES = Integer.getInteger("server.maxConcurrentSearches", CPU_THREADS * 4);
+    public static final int MAX_CONCURRENT_BATCHES = Integer.getInteger("server.maxConcurrentBatches", 16);
+
+    public static boolean isNioMode() {
+        return EXECUTION_MODE.equalsIgnoreCase("nio");
+    }
+
+    public static boolean isVirtualThreadMode() {
+        return EXECUTION_MODE.equalsIgnoreCase("virtual");
+    }
+}
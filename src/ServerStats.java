@@ -0,0 +1,237 @@
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+public class ServerStats {
+    private static final long startedAt = System.currentTimeMillis();
+    private static final Map<String, ActionStats> actions = new ConcurrentHashMap<>();
+    private static final Map<String, IntSupplier> queues = new ConcurrentHashMap<>();
+    private static volatile IntSupplier connections = () -> 0;
+
+    private ServerStats() {
+    }
+
+    public static class LatencyHistogram {
+        private static final int SUB_BUCKET_BITS = 5;
+        private static final int HALF_BUCKETS = 1 << (SUB_BUCKET_BITS - 1);
+        private static final long MAX_VALUE = 1L << 36;
+        private final AtomicLongArray counts = new AtomicLongArray(bucketOf(MAX_VALUE) + 1);
+        private final LongAdder total = new LongAdder();
+        private volatile long max;
+
+        public void record(long value) {
+            long clamped = Math.max(0, Math.min(value, MAX_VALUE));
+            counts.incrementAndGet(bucketOf(clamped));
+            total.increment();
+            if (clamped > max) {
+                synchronized (this) {
+                    max = Math.max(max, clamped);
+                }
+            }
+        }
+
+        public long percentile(double percentile) {
+            long count = total.sum();
+            if (count == 0) {
+                return 0;
+            }
+            long target = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+            long seen = 0;
+            for (int bucket = 0; bucket < counts.length(); bucket++) {
+                seen += counts.get(bucket);
+                if (seen >= target) {
+                    return Math.min(highestValueIn(bucket), max);
+                }
+            }
+            return max;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        private static int bucketOf(long value) {
+            if (value < 2 * HALF_BUCKETS) {
+                return (int) value;
+            }
+            int shift = (63 - Long.numberOfLeadingZeros(value)) - (SUB_BUCKET_BITS - 1);
+            return shift * HALF_BUCKETS + (int) (value >> shift);
+        }
+
+        private static long highestValueIn(int bucket) {
+            if (bucket < 2 * HALF_BUCKETS) {
+                return bucket;
+            }
+            int shift = bucket / HALF_BUCKETS - 1;
+            long sub = bucket - (long) shift * HALF_BUCKETS;
+            return ((sub + 1) << shift) - 1;
+        }
+    }
+
+    private static class ActionStats {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder sized = new LongAdder();
+        private final LongAdder requestBytes = new LongAdder();
+        private final LongAdder responseBytes = new LongAdder();
+        private final LatencyHistogram latencyMicros = new LatencyHistogram();
+
+        private JsonObject toJson() {
+            long requests = count.sum();
+            long sizedRequests = sized.sum();
+            JsonObject json = new JsonObject();
+            json.addProperty("count", requests);
+            json.addProperty("errors", errors.sum());
+            json.addProperty("requestBytes", requestBytes.sum());
+            json.addProperty("responseBytes", responseBytes.sum());
+            json.addProperty("avgRequestBytes", sizedRequests > 0 ? requestBytes.sum() / sizedRequests : 0);
+            json.addProperty("avgResponseBytes", sizedRequests > 0 ? responseBytes.sum() / sizedRequests : 0);
+            JsonObject latency = new JsonObject();
+            latency.addProperty("p50", latencyMicros.percentile(50));
+            latency.addProperty("p99", latencyMicros.percentile(99));
+            latency.addProperty("p999", latencyMicros.percentile(99.9));
+            latency.addProperty("max", latencyMicros.getMax());
+            json.add("latencyMicros", latency);
+            return json;
+        }
+    }
+
+    public static class CountingInputStream extends FilterInputStream {
+        private long count;
+        private long markedCount;
+
+        public CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = super.read(buffer, offset, length);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+
+        @Override
+        public synchronized void mark(int readLimit) {
+            super.mark(readLimit);
+            markedCount = count;
+        }
+
+        @Override
+        public synchronized void reset() throws IOException {
+            super.reset();
+            count = markedCount;
+        }
+
+        public long getCount() {
+            return count;
+        }
+    }
+
+    public static class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        public CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) throws IOException {
+            out.write(buffer, offset, length);
+            count += length;
+        }
+
+        public long getCount() {
+            return count;
+        }
+    }
+
+    public static void completed(String action, JsonObject response, long elapsedNanos) {
+        ActionStats stats = actions.computeIfAbsent(action, name -> new ActionStats());
+        stats.count.increment();
+        JsonElement status = response.get("status");
+        if (status == null || !"success".equals(status.getAsString())) {
+            stats.errors.increment();
+        }
+        stats.latencyMicros.record(elapsedNanos / 1000);
+    }
+
+    public static void recordSizes(String action, long requestBytes, long responseBytes) {
+        ActionStats stats = action != null ? actions.get(action) : null;
+        if (stats != null) {
+            stats.sized.increment();
+            stats.requestBytes.add(requestBytes);
+            stats.responseBytes.add(responseBytes);
+        }
+    }
+
+    public static void trackConnections(IntSupplier activeConnections) {
+        connections = activeConnections;
+    }
+
+    public static void trackQueue(String name, IntSupplier depth) {
+        queues.put(name, depth);
+    }
+
+    public static int queueDepth(ExecutorService executor) {
+        return executor instanceof ThreadPoolExecutor ? ((ThreadPoolExecutor) executor).getQueue().size() : 0;
+    }
+
+    public static JsonObject snapshot() {
+        JsonObject json = new JsonObject();
+        json.addProperty("uptimeSeconds", (System.currentTimeMillis() - startedAt) / 1000);
+        json.addProperty("activeConnections", connections.getAsInt());
+        JsonObject queueJson = new JsonObject();
+        for (Map.Entry<String, IntSupplier> queue : new LinkedHashMap<>(queues).entrySet()) {
+            queueJson.addProperty(queue.getKey(), queue.getValue().getAsInt());
+        }
+        json.add("queueDepth", queueJson);
+        List<Map.Entry<String, ActionStats>> sorted = new ArrayList<>(actions.entrySet());
+        sorted.sort(Comparator.comparingLong((Map.Entry<String, ActionStats> entry) -> entry.getValue().count.sum()).reversed());
+        JsonObject actionJson = new JsonObject();
+        for (Map.Entry<String, ActionStats> entry : sorted) {
+            actionJson.add(entry.getKey(), entry.getValue().toJson());
+        }
+        json.add("actions", actionJson);
+        return json;
+    }
+}
@@ -0,0 +1,23 @@
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Supplier;
+
+public interface StorageBackend {
+    List<Music> loadMusics();
+
+    void saveMusics(List<Music> musics);
+
+    List<Music> loadServerMusics();
+
+    List<User> loadUsers();
+
+    void saveUser(User user);
+
+    void saveUserBatch(Collection<User> users);
+
+    void removeUser(User user);
+
+    boolean needsCompaction();
+
+    void compactUsers(Supplier<List<User>> users);
+}
@@ -1,3 +1,15 @@
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
 import java.util.Scanner;
 import java.util.List;
 import java.util.ArrayList;
@@ -24,6 +36,7 @@ public class SystemManager {
         System.out.println("7 Display user's music");
         System.out.println("8 Delete a user's music");
         System.out.println("9 List server music");
+        System.out.println("10 Display server statistics");
         System.out.println("0 Exit");
     }
 
@@ -243,7 +256,7 @@ public class SystemManager {
                 deleted = true;
             }
             if (user.getUserMusics().stream().anyMatch(m -> m.getId() == musicId)) {
-                user.removeUserMusic(music.getTitle());
+                userManager.removeUserMusic(user, music.getTitle());
                 System.out.println("Song with ID " + musicId + " removed from user's music library.");
                 deleted = true;
             }
@@ -256,7 +269,7 @@ public class SystemManager {
                 }
             }
             if (deleted) {
-                DatabaseManager.saveUsers(userManager.getUsers());
+                userManager.saveUser(user);
             } else {
                 System.out.println("Song with ID " + musicId + " not found in user's music.");
             }
@@ -278,6 +291,50 @@ public class SystemManager {
         }
     }
 
+    private void displayServerStats() {
+        System.out.println("--- Server Statistics ---");
+        try (Socket socket = new Socket("localhost", ServerConfig.PORT);
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8)) {
+            socket.setSoTimeout(5000);
+            out.write("{\"action\":\"server_stats\",\"requestId\":\"admin\",\"data\":{}}\n");
+            out.flush();
+            String line = in.readLine();
+            if (line == null) {
+                System.out.println("Server closed the connection.");
+                return;
+            }
+            JsonObject response = JsonParser.parseString(line).getAsJsonObject();
+            if (!"success".equals(response.get("status").getAsString())) {
+                System.out.println("Error: " + response.get("message").getAsString());
+                return;
+            }
+            JsonObject stats = response.getAsJsonObject("data");
+            System.out.println("Uptime: " + stats.get("uptimeSeconds").getAsLong() + "s, Active connections: " + stats.get("activeConnections").getAsInt());
+            for (Map.Entry<String, JsonElement> queue : stats.getAsJsonObject("queueDepth").entrySet()) {
+                System.out.println("Queue " + queue.getKey() + ": " + queue.getValue().getAsInt());
+            }
+            JsonObject actions = stats.getAsJsonObject("actions");
+            if (actions.size() == 0) {
+                System.out.println("No requests recorded yet.");
+            }
+            for (Map.Entry<String, JsonElement> entry : actions.entrySet()) {
+                JsonObject action = entry.getValue().getAsJsonObject();
+                JsonObject latency = action.getAsJsonObject("latencyMicros");
+                System.out.println(entry.getKey() + ": count=" + action.get("count").getAsLong()
+                        + ", errors=" + action.get("errors").getAsLong()
+                        + ", p50=" + latency.get("p50").getAsLong() + "us"
+                        + ", p99=" + latency.get("p99").getAsLong() + "us"
+                        + ", p999=" + latency.get("p999").getAsLong() + "us"
+                        + ", max=" + latency.get("max").getAsLong() + "us"
+                        + ", avg request=" + action.get("avgRequestBytes").getAsLong() + "B"
+                        + ", avg response=" + action.get("avgResponseBytes").getAsLong() + "B");
+            }
+        } catch (IOException | JsonParseException | IllegalStateException e) {
+            System.out.println("Could not read server statistics: " + e.getMessage());
+        }
+    }
+
     public static void main(String[] args) {
         SystemManager systemManager = new SystemManager();
         Scanner scanner = new Scanner(System.in);
@@ -320,6 +377,9 @@ public class SystemManager {
                 case 9:
                     systemManager.listServerMusic();
                     break;
+                case 10:
+                    systemManager.displayServerStats();
+                    break;
                 case 0:
                     System.out.println("Exiting Admin Panel...");
                     break;
@@ -0,0 +1,35 @@
+public class TrackMetadata {
+    private final String title;
+    private final String artist;
+    private final long durationSeconds;
+    private final int bitrate;
+    private final byte[] albumImage;
+
+    public TrackMetadata(String title, String artist, long durationSeconds, int bitrate, byte[] albumImage) {
+        this.title = title;
+        this.artist = artist;
+        this.durationSeconds = durationSeconds;
+        this.bitrate = bitrate;
+        this.albumImage = albumImage;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getArtist() {
+        return artist;
+    }
+
+    public long getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    public int getBitrate() {
+        return bitrate;
+    }
+
+    public byte[] getAlbumImage() {
+        return albumImage;
+    }
+}
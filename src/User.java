@@ -1,9 +1,10 @@
 import java.util.ArrayList;
 import java.util.List;
-import java.io.*;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.UnaryOperator;
 
 public class User {
-    private static long lastId = loadLastId("user_last_id.txt");
     private final long id;
     private String username;
     private String password;
@@ -12,59 +13,100 @@ public class User {
     private List<Music> userMusics;
     private boolean allowSharing;
     private List<PlayList> playlists;
+    private long version;
+    private transient List<UserChange> changes;
+    private static final int MAX_CHANGES = 256;
+    private static final long LOAD_VERSION_GAP = 1L << 32;
 
     public User(String username, String password, String email) {
-        this.id = ++lastId;
-        saveLastId("user_last_id.txt", lastId);
+        this.id = IdAllocator.USER.next();
         this.username = username;
         this.password = password;
         this.email = email;
-        this.likedMusics = new ArrayList<>();
-        this.userMusics = new ArrayList<>();
+        this.likedMusics = new CopyOnWriteArrayList<>();
+        this.userMusics = new CopyOnWriteArrayList<>();
         this.allowSharing = true;
-        this.playlists = new ArrayList<>();
+        this.playlists = new CopyOnWriteArrayList<>();
+        this.changes = new ArrayList<>();
     }
 
-    public boolean unlikeMusicById(long musicId) {
-        for (Music music : likedMusics) {
-            if (music.getId() == musicId) {
-                likedMusics.remove(music);
-                return true;
-            }
+    public void useConcurrentLists() {
+        likedMusics = new CopyOnWriteArrayList<>(likedMusics != null ? likedMusics : List.of());
+        userMusics = new CopyOnWriteArrayList<>(userMusics != null ? userMusics : List.of());
+        playlists = new CopyOnWriteArrayList<>(playlists != null ? playlists : List.of());
+        likedMusics.removeIf(Objects::isNull);
+        userMusics.removeIf(Objects::isNull);
+        playlists.removeIf(Objects::isNull);
+        for (PlayList playlist : playlists) {
+            playlist.useSnapshotList();
         }
-        return false;
     }
 
-    private static long loadLastId(String filename) {
-        try {
-            File file = new File(filename);
-            if (file.exists()) {
-                BufferedReader reader = new BufferedReader(new FileReader(file));
-                String line = reader.readLine();
-                reader.close();
-                if (line != null && !line.trim().isEmpty()) {
-                    return Long.parseLong(line.trim());
+    public void resolveMusics(UnaryOperator<Music> resolver) {
+        likedMusics.replaceAll(resolver);
+        userMusics.replaceAll(resolver);
+        for (PlayList playlist : playlists) {
+            playlist.resolveMusics(resolver);
+        }
+    }
+
+    public synchronized void recordChange(String collection, String op, long itemId) {
+        if (changes == null) {
+            changes = new ArrayList<>();
+        }
+        changes.add(new UserChange(++version, collection, op, itemId));
+        if (changes.size() > MAX_CHANGES) {
+            changes.subList(0, changes.size() - MAX_CHANGES).clear();
+        }
+    }
+
+    public synchronized void startChangeLog() {
+        changes = new ArrayList<>();
+        version += LOAD_VERSION_GAP;
+    }
+
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    public synchronized List<UserChange> getChangesSince(long sinceVersion) {
+        List<UserChange> result = new ArrayList<>();
+        if (changes != null) {
+            for (UserChange change : changes) {
+                if (change.getVersion() > sinceVersion) {
+                    result.add(change);
                 }
             }
-        } catch (IOException | NumberFormatException e) {
-            e.printStackTrace();
         }
-        return 0;
+        return result;
     }
 
-    private static void saveLastId(String filename, long id) {
-        try {
-            BufferedWriter writer = new BufferedWriter(new FileWriter(filename));
-            writer.write(String.valueOf(id));
-            writer.close();
-        } catch (IOException e) {
-            e.printStackTrace();
+    public synchronized boolean canSyncFrom(long sinceVersion) {
+        if (sinceVersion <= 0 || sinceVersion > version) {
+            return false;
+        }
+        if (sinceVersion == version) {
+            return true;
         }
+        return changes != null && !changes.isEmpty() && changes.get(0).getVersion() <= sinceVersion + 1;
+    }
+
+    public boolean unlikeMusicById(long musicId) {
+        for (Music music : likedMusics) {
+            if (music.getId() == musicId && likedMusics.remove(music)) {
+                recordChange(UserChange.LIKED_MUSICS, UserChange.REMOVE, musicId);
+                return true;
+            }
+        }
+        return false;
     }
 
     public long getId() { return id; }
     public String getUsername() { return username; }
-    public void setUsername(String username) { this.username = username; }
+    public void setUsername(String username) {
+        this.username = username;
+        recordChange(UserChange.PROFILE, UserChange.UPSERT, id);
+    }
     public String getPassword() { return password; }
     public String getEmail() { return email; }
     public List<Music> getLikedMusics() { return likedMusics; }
@@ -72,11 +114,15 @@ public class User {
     public boolean isAllowSharing() { return allowSharing; }
     public void setEmail(String email) { this.email = email; }
     public void setPassword(String password) { this.password = password; }
-    public void setAllowSharing(boolean allowSharing) { this.allowSharing = allowSharing; }
+    public void setAllowSharing(boolean allowSharing) {
+        this.allowSharing = allowSharing;
+        recordChange(UserChange.PROFILE, UserChange.UPSERT, id);
+    }
 
     public boolean likeMusic(Music music) {
         if (!likedMusics.contains(music)) {
             likedMusics.add(music);
+            recordChange(UserChange.LIKED_MUSICS, UserChange.UPSERT, music.getId());
             return true;
         }
         return false;
@@ -84,18 +130,33 @@ public class User {
 
     public boolean addUserMusic(Music music) {
         if (music != null && !userMusics.stream().anyMatch(m -> m.getTitle().equalsIgnoreCase(music.getTitle()) && m.getArtist().equalsIgnoreCase(music.getArtist()))) {
-            Music musicCopy = new Music(music.getTitle(), music.getArtist(), music.getFilePath(), music.getUploaderEmail());
-            userMusics.add(musicCopy);
+            userMusics.add(music);
+            recordChange(UserChange.USER_MUSICS, UserChange.UPSERT, music.getId());
             return true;
         }
         return false;
     }
 
     public boolean unlikeMusic(String musicName) {
-        return likedMusics.removeIf(m -> m.getTitle().equals(musicName));
+        return removeByTitle(likedMusics, UserChange.LIKED_MUSICS, musicName);
     }
     public boolean removeUserMusic(String musicName) {
-        return userMusics.removeIf(m -> m.getTitle().equals(musicName));
+        return removeByTitle(userMusics, UserChange.USER_MUSICS, musicName);
+    }
+
+    private boolean removeByTitle(List<Music> musics, String collection, String musicName) {
+        boolean removed = false;
+        for (Music music : musics) {
+            if (music.getTitle().equals(musicName) && musics.remove(music)) {
+                recordChange(collection, UserChange.REMOVE, music.getId());
+                removed = true;
+            }
+        }
+        return removed;
+    }
+
+    public void playlistChanged(PlayList playlist) {
+        recordChange(UserChange.PLAYLISTS, UserChange.UPSERT, playlist.getId());
     }
 
     public List<PlayList> getPlaylists() {
@@ -104,10 +165,18 @@ public class User {
     public void addPlaylist(PlayList playlist) {
         if (playlist != null && findPlaylistByName(playlist.getName()) == null) {
             playlists.add(playlist);
+            playlistChanged(playlist);
         }
     }
     public boolean removePlaylist(String playlistName) {
-        return playlists.removeIf(p -> p.getName().equalsIgnoreCase(playlistName));
+        boolean removed = false;
+        for (PlayList playlist : playlists) {
+            if (playlist.getName().equalsIgnoreCase(playlistName) && playlists.remove(playlist)) {
+                recordChange(UserChange.PLAYLISTS, UserChange.REMOVE, playlist.getId());
+                removed = true;
+            }
+        }
+        return removed;
     }
     public PlayList findPlaylistByName(String name) {
         if (name != null) {
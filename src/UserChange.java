@@ -0,0 +1,36 @@
+public class UserChange {
+    public static final String USER_MUSICS = "user_musics";
+    public static final String LIKED_MUSICS = "liked_musics";
+    public static final String PLAYLISTS = "playlists";
+    public static final String PROFILE = "profile";
+    public static final String UPSERT = "upsert";
+    public static final String REMOVE = "remove";
+
+    private final long version;
+    private final String collection;
+    private final String op;
+    private final long itemId;
+
+    public UserChange(long version, String collection, String op, long itemId) {
+        this.version = version;
+        this.collection = collection;
+        this.op = op;
+        this.itemId = itemId;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public String getCollection() {
+        return collection;
+    }
+
+    public String getOp() {
+        return op;
+    }
+
+    public long getItemId() {
+        return itemId;
+    }
+}
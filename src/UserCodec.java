@@ -0,0 +1,115 @@
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class UserCodec {
+    private static final Gson gson = new Gson();
+    private static final Gson refEncoder = new GsonBuilder()
+            .registerTypeAdapter(Music.class, new MusicRefAdapter(Map.of())).create();
+    private final Gson refDecoder;
+
+    public UserCodec(Map<Long, Music> tracks) {
+        this.refDecoder = new GsonBuilder().registerTypeAdapter(Music.class, new MusicRefAdapter(tracks)).create();
+    }
+
+    private static class MusicRefAdapter extends TypeAdapter<Music> {
+        private final Map<Long, Music> tracks;
+
+        private MusicRefAdapter(Map<Long, Music> tracks) {
+            this.tracks = tracks;
+        }
+
+        @Override
+        public void write(JsonWriter out, Music music) throws IOException {
+            if (music == null) {
+                out.nullValue();
+            } else {
+                out.value(music.getId());
+            }
+        }
+
+        @Override
+        public Music read(JsonReader in) throws IOException {
+            JsonToken token = in.peek();
+            if (token == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            if (token == JsonToken.BEGIN_OBJECT) {
+                Music legacy = gson.fromJson(in, Music.class);
+                Music known = tracks.putIfAbsent(legacy.getId(), legacy);
+                Music music = known != null ? known : legacy;
+                music.markDirty();
+                return music;
+            }
+            long id = in.nextLong();
+            Music music = tracks.get(id);
+            if (music == null) {
+                Log.warn("Dropping reference to unknown music id " + id);
+            }
+            return music;
+        }
+    }
+
+    public static JsonElement encodeUser(User user) {
+        return refEncoder.toJsonTree(user);
+    }
+
+    public static JsonElement encodeTrack(Music music) {
+        return gson.toJsonTree(music);
+    }
+
+    public static Music decodeTrack(JsonElement json) {
+        return gson.fromJson(json, Music.class);
+    }
+
+    public User decodeUser(JsonElement json) {
+        return refDecoder.fromJson(json, User.class);
+    }
+
+    public static List<Music> takeDirtyTracks(Collection<User> users) {
+        List<Music> candidates = referencedTracks(users);
+        candidates.addAll(Music.drainDirtyTracks());
+        Map<Long, Music> dirty = new LinkedHashMap<>();
+        for (Music music : candidates) {
+            if (music.takeDirty()) {
+                dirty.putIfAbsent(music.getId(), music);
+            }
+        }
+        return new ArrayList<>(dirty.values());
+    }
+
+    public static void restoreDirtyTracks(Collection<Music> tracks) {
+        for (Music music : tracks) {
+            music.markDirty();
+        }
+    }
+
+    public static List<Music> referencedTracks(Collection<User> users) {
+        Map<Long, Music> referenced = new LinkedHashMap<>();
+        for (User user : users) {
+            for (Music music : user.getUserMusics()) {
+                referenced.putIfAbsent(music.getId(), music);
+            }
+            for (Music music : user.getLikedMusics()) {
+                referenced.putIfAbsent(music.getId(), music);
+            }
+            for (PlayList playlist : user.getPlaylists()) {
+                for (Music music : playlist.getMusics()) {
+                    referenced.putIfAbsent(music.getId(), music);
+                }
+            }
+        }
+        return new ArrayList<>(referenced.values());
+    }
+}
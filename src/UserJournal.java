@@ -0,0 +1,230 @@
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+public class UserJournal {
+    private final File file;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition written = lock.newCondition();
+    private final Condition flushed = lock.newCondition();
+    private FileChannel channel;
+    private Thread flusher;
+    private boolean closed;
+    private long writtenSeq;
+    private long flushedSeq;
+    private IOException syncFailure;
+    private int recordCount;
+
+    public interface SnapshotWriter {
+        void write() throws IOException;
+    }
+
+    public UserJournal(String path) {
+        this.file = new File(path);
+        int[] count = {0};
+        long validLength = scan(file, record -> count[0]++);
+        this.recordCount = count[0];
+        this.channel = openChannel(file, validLength);
+    }
+
+    public void append(List<JsonObject> records) {
+        StringBuilder lines = new StringBuilder();
+        for (JsonObject record : records) {
+            lines.append(record).append('\n');
+        }
+        byte[] bytes = lines.toString().getBytes(StandardCharsets.UTF_8);
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("User journal " + file + " is closed");
+            }
+            if (syncFailure != null) {
+                throw new IllegalStateException("User journal " + file + " failed to sync: " + syncFailure.getMessage(), syncFailure);
+            }
+            startFlusher();
+            long start = channel.size();
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(bytes);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            } catch (IOException e) {
+                channel.truncate(start);
+                throw e;
+            }
+            long seq = ++writtenSeq;
+            recordCount += records.size();
+            written.signal();
+            while (flushedSeq < seq) {
+                flushed.awaitUninterruptibly();
+            }
+            if (syncFailure != null) {
+                throw new IllegalStateException("User journal " + file + " failed to sync: " + syncFailure.getMessage(), syncFailure);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot append to user journal " + file + ": " + e.getMessage(), e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void replay(Consumer<JsonObject> consumer) {
+        scan(file, consumer);
+    }
+
+    public int getRecordCount() {
+        lock.lock();
+        try {
+            return recordCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void compact(SnapshotWriter snapshotWriter) {
+        lock.lock();
+        try {
+            snapshotWriter.write();
+            channel.truncate(0);
+            channel.force(true);
+            recordCount = 0;
+            syncFailure = null;
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot compact user journal " + file + ": " + e.getMessage(), e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            written.signal();
+            channel.close();
+        } catch (IOException e) {
+            Log.warn("Error closing user journal: " + e.getMessage());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void startFlusher() {
+        if (flusher == null) {
+            flusher = new Thread(this::flushLoop, "user-journal-flusher");
+            flusher.setDaemon(true);
+            flusher.start();
+        }
+    }
+
+    private void flushLoop() {
+        while (true) {
+            long target;
+            lock.lock();
+            try {
+                while (flushedSeq == writtenSeq && !closed) {
+                    written.awaitUninterruptibly();
+                }
+                if (closed) {
+                    return;
+                }
+                target = writtenSeq;
+            } finally {
+                lock.unlock();
+            }
+            IOException failure = null;
+            try {
+                channel.force(false);
+            } catch (IOException e) {
+                Log.error("Error syncing user journal: " + e.getMessage());
+                failure = e;
+            }
+            lock.lock();
+            try {
+                if (failure != null) {
+                    syncFailure = failure;
+                }
+                flushedSeq = target;
+                flushed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private static FileChannel openChannel(File file, long validLength) {
+        try {
+            FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            if (channel.size() > validLength) {
+                Log.warn("Truncating torn user journal tail at offset " + validLength);
+                channel.truncate(validLength);
+                channel.force(true);
+            }
+            return channel;
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot open user journal " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static long scan(File file, Consumer<JsonObject> consumer) {
+        if (!file.exists()) {
+            return 0;
+        }
+        long validLength = 0;
+        long offset = 0;
+        long corruptAt = -1;
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+            int b;
+            while ((b = in.read()) != -1) {
+                offset++;
+                if (b != '\n') {
+                    line.write(b);
+                    continue;
+                }
+                String text = line.toString(StandardCharsets.UTF_8);
+                line.reset();
+                if (!text.trim().isEmpty()) {
+                    JsonObject record;
+                    try {
+                        record = JsonParser.parseString(text).getAsJsonObject();
+                    } catch (JsonParseException | IllegalStateException e) {
+                        if (corruptAt < 0) {
+                            corruptAt = validLength;
+                        }
+                        continue;
+                    }
+                    if (corruptAt >= 0) {
+                        throw new IllegalStateException("Corrupt user journal record at offset " + corruptAt
+                                + " in " + file + " is followed by valid records");
+                    }
+                    consumer.accept(record);
+                }
+                if (corruptAt < 0) {
+                    validLength = offset;
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read user journal " + file + ": " + e.getMessage(), e);
+        }
+        if (corruptAt >= 0) {
+            Log.warn("Skipping torn user journal tail at offset " + corruptAt);
+        }
+        return validLength;
+    }
+}
@@ -0,0 +1,43 @@
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class UserLocks {
+    private final ReentrantLock[] stripes;
+
+    public UserLocks(int stripeCount) {
+        stripes = new ReentrantLock[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    public static class Held implements AutoCloseable {
+        private final ReentrantLock[] locks;
+
+        private Held(ReentrantLock[] locks) {
+            this.locks = locks;
+        }
+
+        @Override
+        public void close() {
+            for (int i = locks.length - 1; i >= 0; i--) {
+                locks[i].unlock();
+            }
+        }
+    }
+
+    public Held lock(String... keys) {
+        int[] indexes = Arrays.stream(keys)
+                .filter(key -> key != null)
+                .mapToInt(key -> Math.floorMod(key.hashCode(), stripes.length))
+                .distinct()
+                .sorted()
+                .toArray();
+        ReentrantLock[] locks = new ReentrantLock[indexes.length];
+        for (int i = 0; i < indexes.length; i++) {
+            locks[i] = stripes[indexes[i]];
+            locks[i].lock();
+        }
+        return new Held(locks);
+    }
+}
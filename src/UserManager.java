@@ -1,54 +1,161 @@
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class UserManager {
     private static final String DB_DIR = System.getProperty("user.dir") + File.separator + "db";
     private static final String USERS_FILE = DB_DIR + File.separator + "users.json";
-    private List<User> users;
+    private volatile List<User> users;
+    private final Object usersLock = new Object();
+    private final Map<String, User> usersByEmail = new ConcurrentHashMap<>();
+    private final MusicCatalog catalog = new MusicCatalog();
+    private final SearchIndex searchIndex = new SearchIndex();
+    private final ThreadLocal<Set<User>> pendingSaves = new ThreadLocal<>();
+    private final UserLocks userLocks = new UserLocks(Integer.getInteger("users.lockStripes", 64));
+    private final PersistenceScheduler persistence;
     private MusicManager musicManager;
 
+    @SuppressWarnings("this-escape")
     public UserManager() {
-        users = Collections.synchronizedList(new ArrayList<>());
-        users.addAll(DatabaseManager.loadUsers());
+        users = List.copyOf(DatabaseManager.loadUsers());
+        for (User user : users) {
+            user.useConcurrentLists();
+            user.startChangeLog();
+            usersByEmail.put(normalizeEmail(user.getEmail()), user);
+            IdAllocator.USER.advancePast(user.getId());
+            for (PlayList playlist : user.getPlaylists()) {
+                IdAllocator.PLAYLIST.advancePast(playlist.getId());
+            }
+            for (Music music : user.getUserMusics()) {
+                IdAllocator.MUSIC.advancePast(music.getId());
+            }
+        }
+        persistence = new PersistenceScheduler(this::persist, Long.getLong("db.flushIntervalMs", 50));
+        persistence.start();
+    }
+
+    private static String normalizeEmail(String email) {
+        return email.trim().toLowerCase(Locale.ROOT);
+    }
+
+    public UserLocks.Held lockUsers(String... emails) {
+        String[] keys = new String[emails.length];
+        for (int i = 0; i < emails.length; i++) {
+            keys[i] = emails[i] != null ? normalizeEmail(emails[i]) : null;
+        }
+        return userLocks.lock(keys);
     }
 
     public void setMusicManager(MusicManager musicManager) {
         this.musicManager = musicManager;
+        for (Music music : musicManager.getServerMusics()) {
+            searchIndex.add(music, null);
+        }
+        synchronized (usersLock) {
+            for (User user : users) {
+                user.resolveMusics(this::resolveShared);
+                for (Music music : user.getUserMusics()) {
+                    MusicCatalog.Entry entry = catalog.add(music, user);
+                    if (!isServerMusic(music)) {
+                        searchIndex.add(music, entry);
+                    }
+                }
+            }
+        }
+    }
+
+    private Music resolveShared(Music music) {
+        Music server = musicManager.findById(music.getId());
+        if (server != null) {
+            return server;
+        }
+        MusicCatalog.Entry entry = catalog.find(music.getId());
+        return entry != null ? entry.getMusic() : music;
     }
 
     public List<User> getUsers() {
-        synchronized (users) {
-            return new ArrayList<>(users);
+        return users;
+    }
+
+    public void saveUser(User user) {
+        Set<User> batch = pendingSaves.get();
+        if (batch != null) {
+            batch.add(user);
+            return;
+        }
+        persistence.markDirty(List.of(user));
+    }
+
+    public boolean awaitDurable() {
+        return persistence.awaitDurable();
+    }
+
+    private void persist(List<User> batch) {
+        String[] emails = new String[batch.size()];
+        for (int i = 0; i < emails.length; i++) {
+            emails[i] = batch.get(i).getEmail();
+        }
+        UserLocks.Held held = lockUsers(emails);
+        try {
+            batch.removeIf(user -> usersByEmail.get(normalizeEmail(user.getEmail())) != user);
+            if (!batch.isEmpty()) {
+                DatabaseManager.saveUserBatch(batch);
+            }
+        } finally {
+            held.close();
+        }
+        compactIfNeeded();
+    }
+
+    public void beginBatch() {
+        pendingSaves.set(Collections.newSetFromMap(new IdentityHashMap<>()));
+    }
+
+    public void commitBatch() {
+        Set<User> batch = pendingSaves.get();
+        pendingSaves.remove();
+        if (batch != null && !batch.isEmpty()) {
+            persistence.markDirty(batch);
+        }
+    }
+
+    private void compactIfNeeded() {
+        if (DatabaseManager.needsCompaction()) {
+            try {
+                DatabaseManager.compactUsers(this::getUsers);
+            } catch (IllegalStateException e) {
+                Log.error("Compaction failed, keeping journal: " + e.getMessage());
+            }
         }
     }
 
     public boolean HandelLogin(String email, String password) {
         if (email != null && password != null) {
-            synchronized (users) {
-                for (User user : users) {
-                    if (user.getEmail().equalsIgnoreCase(email) && user.getPassword().equals(password)) {
-                        return true;
-                    }
-                }
-            }
+            User user = usersByEmail.get(normalizeEmail(email));
+            return user != null && user.getPassword().equals(password);
         }
         return false;
     }
 
     public boolean HandelRegister(String email, String username, String password) {
         if (email != null && username != null && password != null) {
-            synchronized (users) {
-                for (User user : users) {
-                    if (user.getEmail().equalsIgnoreCase(email)) {
-                        System.out.println("Email already exists: " + email);
-                        return false;
-                    }
+            synchronized (usersLock) {
+                if (usersByEmail.containsKey(normalizeEmail(email))) {
+                    Log.debug("Email already exists: " + email);
+                    return false;
                 }
                 User user = new User(username, password, email);
-                users.add(user);
-                DatabaseManager.saveUsers(users);
+                List<User> next = new ArrayList<>(users);
+                next.add(user);
+                users = List.copyOf(next);
+                usersByEmail.put(normalizeEmail(email), user);
+                saveUser(user);
                 return true;
             }
         }
@@ -57,13 +164,7 @@ public class UserManager {
 
     public User getUserByEmail(String email) {
         if (email != null) {
-            synchronized (users) {
-                for (User user : users) {
-                    if (user.getEmail().equalsIgnoreCase(email)) {
-                        return user;
-                    }
-                }
-            }
+            return usersByEmail.get(normalizeEmail(email));
         }
         return null;
     }
@@ -73,7 +174,7 @@ public class UserManager {
         if (user != null && playlist != null) {
             if (user.findPlaylistByName(playlist.getName()) == null) {
                 user.addPlaylist(playlist);
-                DatabaseManager.saveUsers(users);
+                saveUser(user);
                 return true;
             }
         }
@@ -85,7 +186,7 @@ public class UserManager {
         if (user != null) {
             boolean removed = user.removePlaylist(playlistName);
             if (removed) {
-                DatabaseManager.saveUsers(users);
+                saveUser(user);
             }
             return removed;
         }
@@ -102,10 +203,24 @@ public class UserManager {
 
     public boolean deleteUser(String email) {
         if (email != null) {
-            synchronized (users) {
-                boolean removed = users.removeIf(u -> u.getEmail().equalsIgnoreCase(email));
+            synchronized (usersLock) {
+                User user = usersByEmail.get(normalizeEmail(email));
+                List<User> next = new ArrayList<>(users);
+                boolean removed = user != null && next.remove(user);
                 if (removed) {
-                    DatabaseManager.saveUsers(users);
+                    DatabaseManager.removeUser(user);
+                    usersByEmail.remove(normalizeEmail(email));
+                    users = List.copyOf(next);
+                    Set<User> batch = pendingSaves.get();
+                    if (batch != null) {
+                        batch.remove(user);
+                    }
+                    for (Music music : user.getUserMusics()) {
+                        if (catalog.removeHolder(music.getId(), user) && !isServerMusic(music)) {
+                            searchIndex.remove(music.getId());
+                        }
+                    }
+                    compactIfNeeded();
                 }
                 return removed;
             }
@@ -113,28 +228,81 @@ public class UserManager {
         return false;
     }
 
+    public Music addUserMusic(User user, Music music) {
+        if (!user.addUserMusic(music)) {
+            return null;
+        }
+        MusicCatalog.Entry entry = catalog.add(music, user);
+        if (!isServerMusic(music)) {
+            searchIndex.add(music, entry);
+        }
+        return music;
+    }
+
+    private boolean isServerMusic(Music music) {
+        return musicManager != null && musicManager.findById(music.getId()) == music;
+    }
+
+    public boolean musicEnriched(User user, Music music, TrackMetadata metadata) {
+        MusicCatalog.Entry entry = catalog.find(music.getId());
+        if (entry == null || isServerMusic(music)) {
+            return false;
+        }
+        UserLocks.Held held = lockUsers(user.getEmail());
+        try {
+            music.applyMetadata(metadata);
+            searchIndex.add(music, entry);
+            user.recordChange(UserChange.USER_MUSICS, UserChange.UPSERT, music.getId());
+            saveUser(user);
+            return true;
+        } finally {
+            held.close();
+        }
+    }
+
+    public boolean removeUserMusic(User user, String musicName) {
+        List<Music> matches = new ArrayList<>();
+        for (Music music : user.getUserMusics()) {
+            if (music.getTitle().equals(musicName)) {
+                matches.add(music);
+            }
+        }
+        boolean removed = user.removeUserMusic(musicName);
+        if (removed) {
+            for (Music music : matches) {
+                if (catalog.removeHolder(music.getId(), user) && !isServerMusic(music)) {
+                    searchIndex.remove(music.getId());
+                }
+            }
+        }
+        return removed;
+    }
+
+    public List<SearchIndex.Hit> searchMusic(String query, User requester, int limit) {
+        return searchIndex.search(query, requester, limit);
+    }
+
+    public MusicCatalog.Entry findCatalogEntry(long musicId) {
+        return catalog.find(musicId);
+    }
+
     public boolean updateUser(String email, String username, String password) {
         if (email != null && username != null && password != null) {
-            synchronized (users) {
-                for (User user : users) {
-                    if (user.getEmail().equalsIgnoreCase(email)) {
-                        user.setEmail(email);
-                        user.setPassword(password);
-                        user.setUsername(username);
-                        DatabaseManager.saveUsers(users);
-                        return true;
-                    }
-                }
+            User user = getUserByEmail(email);
+            if (user != null) {
+                user.setPassword(password);
+                user.setUsername(username);
+                saveUser(user);
+                return true;
             }
         }
         return false;
     }
 
     public Music findMusicEverywhere(String musicName, User user) {
-        for (Music music : musicManager.getServerMusics()) {
-            if (music.getTitle().equals(musicName)) {
-                return music;
-            }
+        Music serverMusic = musicManager.findByExactName(musicName);
+        if (serverMusic != null) {
+            return serverMusic;
         }
 
         for (Music music : user.getUserMusics()) {
@@ -152,11 +320,21 @@ public class UserManager {
         return null;
     }
 
+    public Music findDownloadableMusic(String musicName, User user) {
+        Music music = musicManager.findByName(musicName);
+        if (music == null && user != null) {
+            music = user.getUserMusics().stream()
+                    .filter(m -> m.getTitle().trim().equalsIgnoreCase(musicName))
+                    .findFirst()
+                    .orElse(null);
+        }
+        return music;
+    }
+
     public Music findMusicById(long musicId, User user) {
-        for (Music music : musicManager.getServerMusics()) {
-            if (music.getId() == musicId) {
-                return music;
-            }
+        Music serverMusic = musicManager.findById(musicId);
+        if (serverMusic != null) {
+            return serverMusic;
         }
 
         for (Music music : user.getUserMusics()) {
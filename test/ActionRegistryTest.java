@@ -0,0 +1,61 @@
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class ActionRegistryTest {
+    public static void main(String[] args) {
+        TestSupport.run(ActionRegistryTest.class);
+    }
+
+    private static JsonObject json(String json) {
+        return JsonParser.parseString(json).getAsJsonObject();
+    }
+
+    public static void testDecodersReadDeclaredFields() {
+        ActionRequests.PlaylistRef playlist = ActionRequests.PlaylistRef.from(
+                json("{\"email\":\"a@x\",\"playlist_name\":\"p\",\"music_id\":\"42\"}"));
+        TestSupport.checkEquals("a@x", playlist.email);
+        TestSupport.checkEquals("p", playlist.playlistName);
+        TestSupport.checkEquals(42L, playlist.musicId);
+
+        ActionRequests.Search search = ActionRequests.Search.from(json("{\"query\":\"q\",\"limit\":5}"));
+        TestSupport.checkEquals(5, search.limit);
+        TestSupport.checkEquals(null, ActionRequests.Search.from(json("{\"query\":\"q\"}")).limit);
+
+        TestSupport.check(ActionRequests.Sharing.from(json("{\"allow_sharing\":\"true\"}")).allowSharing, "string booleans are accepted");
+    }
+
+    public static void testDecodersRejectMistypedFields() {
+        TestSupport.checkThrows(JsonParseException.class, () -> ActionRequests.UserRef.from(json("{\"email\":{}}")));
+        TestSupport.checkThrows(JsonParseException.class, () -> ActionRequests.Sync.from(json("{\"since\":\"soon\"}")));
+        TestSupport.checkThrows(JsonParseException.class, () -> ActionRequests.Batch.from(json("{\"requests\":7}")));
+    }
+
+    public static void testHandlerReceivesDecodedRequest() throws Exception {
+        ActionRegistry registry = new ActionRegistry();
+        AtomicReference<String> seen = new AtomicReference<>();
+        registry.register("echo", ActionRequests.UserRef::from, (request, data, response) -> seen.set(request.email));
+        registry.find("echo").execute(json("{\"email\":\"a@x\"}"), new JsonObject());
+        TestSupport.checkEquals("a@x", seen.get());
+    }
+
+    public static void testConcurrencyLimitRejectsWhenExhausted() throws Exception {
+        ActionRegistry registry = new ActionRegistry();
+        registry.register("limited", ActionRequests.None::from, (request, data, response) -> response.addProperty("status", "success"))
+                .maxConcurrent(0);
+        JsonObject response = new JsonObject();
+        registry.find("limited").execute(new JsonObject(), response);
+        TestSupport.checkEquals("error", response.get("status").getAsString());
+        TestSupport.checkEquals("Server busy, try again later", response.get("message").getAsString());
+    }
+
+    public static void testCpuBoundActionRunsOnCpuPool() throws Exception {
+        ActionRegistry registry = new ActionRegistry();
+        AtomicReference<String> thread = new AtomicReference<>();
+        registry.register("cpu", ActionRequests.None::from, (request, data, response) -> thread.set(Thread.currentThread().getName()))
+                .cpuBound();
+        registry.find("cpu").execute(new JsonObject(), new JsonObject());
+        TestSupport.check(thread.get().startsWith("cpu-worker-"), "ran on " + thread.get());
+    }
+}
@@ -0,0 +1,58 @@
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+public class BatchTest {
+    private static RequestHandeler handler;
+
+    public static void main(String[] args) {
+        MusicManager musicManager = new MusicManager();
+        UserManager userManager = new UserManager();
+        userManager.setMusicManager(musicManager);
+        handler = new RequestHandeler(userManager, musicManager);
+        TestSupport.run(BatchTest.class);
+    }
+
+    private static JsonObject send(String json) {
+        return handler.respond(JsonParser.parseString(json).getAsJsonObject());
+    }
+
+    private static String status(JsonArray results, int index) {
+        return results.get(index).getAsJsonObject().get("status").getAsString();
+    }
+
+    public static void testPartialFailureReportsEveryItem() {
+        send("{\"action\":\"register\",\"data\":{\"email\":\"b1@x\",\"username\":\"b\",\"password\":\"p\"}}");
+        JsonObject response = send("{\"action\":\"batch\",\"requestId\":\"r\",\"data\":{\"requests\":["
+                + "{\"action\":\"create_playlist\",\"requestId\":\"a\",\"data\":{\"email\":\"b1@x\",\"name\":\"one\"}},"
+                + "42,"
+                + "{\"requestId\":\"c\",\"data\":{}},"
+                + "{\"action\":\"no_such_action\",\"requestId\":\"d\"},"
+                + "{\"action\":\"create_playlist\",\"requestId\":\"e\",\"data\":{\"email\":\"b1@x\",\"name\":\"two\"}}"
+                + "]}}");
+
+        TestSupport.checkEquals("success", response.get("status").getAsString());
+        JsonArray results = response.getAsJsonArray("data");
+        TestSupport.checkEquals(5, results.size());
+        TestSupport.checkEquals("success", status(results, 0));
+        TestSupport.checkEquals("error", status(results, 1));
+        TestSupport.checkEquals("error", status(results, 2));
+        TestSupport.checkEquals("Missing field: action", results.get(2).getAsJsonObject().get("message").getAsString());
+        TestSupport.checkEquals("c", results.get(2).getAsJsonObject().get("requestId").getAsString());
+        TestSupport.checkEquals("error", status(results, 3));
+        TestSupport.checkEquals("success", status(results, 4));
+
+        JsonObject playlists = send("{\"action\":\"list_user_playlists\",\"data\":{\"email\":\"b1@x\"}}");
+        TestSupport.checkEquals(2, playlists.getAsJsonArray("data").size());
+    }
+
+    public static void testNestedAndStreamingActionsAreRejected() {
+        JsonObject response = send("{\"action\":\"batch\",\"data\":{\"requests\":["
+                + "{\"action\":\"batch\",\"data\":{\"requests\":[]}},"
+                + "{\"action\":\"upload_music_stream\",\"data\":{}}"
+                + "]}}");
+        JsonArray results = response.getAsJsonArray("data");
+        TestSupport.checkEquals("Action not allowed in batch", results.get(0).getAsJsonObject().get("message").getAsString());
+        TestSupport.checkEquals("Action not allowed in batch", results.get(1).getAsJsonObject().get("message").getAsString());
+    }
+}
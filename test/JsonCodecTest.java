@@ -0,0 +1,97 @@
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Random;
+import java.util.stream.Stream;
+
+public class JsonCodecTest {
+    public static void main(String[] args) {
+        TestSupport.run(JsonCodecTest.class);
+    }
+
+    private static InputStream stream(String text) {
+        return new BufferedInputStream(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static long spoolFiles(Path dir) {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.count();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static void testFileFieldIsSpooledToDisk() throws IOException {
+        Path dir = TestSupport.tempDir().toPath();
+        byte[] payload = new byte[300_000];
+        new Random(7).nextBytes(payload);
+        String base64 = Base64.getEncoder().encodeToString(payload);
+        JsonObject request = JsonCodec.readRequest(stream("{\"action\":\"add_local_music\",\"data\":{\"title\":\"t\",\"file\":\""
+                + base64 + "\",\"cover\":\"abc\"}}\n"), dir);
+
+        Path file = JsonCodec.fileOf(request.getAsJsonObject("data").get("file"));
+        TestSupport.check(file != null, "file field must be spooled");
+        TestSupport.check(Arrays.equals(payload, Files.readAllBytes(file)), "spooled bytes must match the payload");
+        TestSupport.checkEquals("t", request.getAsJsonObject("data").get("title").getAsString());
+        TestSupport.checkEquals("abc", request.getAsJsonObject("data").get("cover").getAsString());
+    }
+
+    public static void testEscapedBase64IsDecoded() throws IOException {
+        Path dir = TestSupport.tempDir().toPath();
+        String base64 = Base64.getEncoder().encodeToString("hello?>".getBytes(StandardCharsets.UTF_8));
+        String escaped = base64.replace("/", "\\/").replace("a", "\\u0061");
+        JsonObject request = JsonCodec.readRequest(stream("{\"data\":{\"file\":\"" + escaped + "\\n\"}}\n"), dir);
+        Path file = JsonCodec.fileOf(request.getAsJsonObject("data").get("file"));
+        TestSupport.checkEquals("hello?>", Files.readString(file));
+    }
+
+    public static void testNestedFileFieldsStayInline() throws IOException {
+        Path dir = TestSupport.tempDir().toPath();
+        JsonObject request = JsonCodec.readRequest(stream("{\"file\":\"top\",\"data\":{\"requests\":[{\"data\":{\"file\":\"aGk=\"}}],"
+                + "\"note\":\"file\"}}\n"), dir);
+        TestSupport.checkEquals("top", request.get("file").getAsString());
+        TestSupport.checkEquals("aGk=", request.getAsJsonObject("data").getAsJsonArray("requests").get(0)
+                .getAsJsonObject().getAsJsonObject("data").get("file").getAsString());
+        TestSupport.checkEquals(0L, spoolFiles(dir));
+    }
+
+    public static void testPipelinedRequestsAreNotConsumed() throws IOException {
+        Path dir = TestSupport.tempDir().toPath();
+        InputStream in = stream("{\"action\":\"one\"}\n{\"action\":\"two\",\"data\":{\"file\":\"aGk=\"}}\nraw");
+        TestSupport.checkEquals("one", JsonCodec.readRequest(in, dir).get("action").getAsString());
+        JsonObject second = JsonCodec.readRequest(in, dir);
+        TestSupport.checkEquals("two", second.get("action").getAsString());
+        TestSupport.checkEquals("hi", Files.readString(JsonCodec.fileOf(second.getAsJsonObject("data").get("file"))));
+        TestSupport.checkEquals("raw", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+    }
+
+    public static void testInvalidBase64RemovesSpoolFile() {
+        Path dir = TestSupport.tempDir().toPath();
+        TestSupport.checkThrows(JsonParseException.class,
+                () -> readQuietly(stream("{\"data\":{\"file\":\"a=b=\"}}\n{}\n"), dir));
+        TestSupport.checkEquals(0L, spoolFiles(dir));
+    }
+
+    public static void testTornRequestRemovesSpoolFile() {
+        Path dir = TestSupport.tempDir().toPath();
+        TestSupport.checkThrows(UncheckedIOException.class, () -> readQuietly(stream("{\"data\":{\"file\":\"aGVsbG8"), dir));
+        TestSupport.checkEquals(0L, spoolFiles(dir));
+    }
+
+    private static void readQuietly(InputStream in, Path dir) {
+        try {
+            JsonCodec.readRequest(in, dir);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
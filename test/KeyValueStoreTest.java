@@ -0,0 +1,114 @@
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class KeyValueStoreTest {
+    public static void main(String[] args) {
+        TestSupport.run(KeyValueStoreTest.class);
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String string(byte[] value) {
+        return value == null ? null : new String(value, StandardCharsets.UTF_8);
+    }
+
+    public static void testReopenAfterPut() {
+        String file = new File(TestSupport.tempDir(), "store.kv").getPath();
+        KeyValueStore store = new KeyValueStore(file);
+        store.put("users/1", bytes("alice"));
+        store.put("users/2", bytes("bob"));
+        store.put("users/1", bytes("alice2"));
+
+        KeyValueStore reopened = new KeyValueStore(file);
+        TestSupport.checkEquals("alice2", string(reopened.get("users/1")));
+        TestSupport.checkEquals("bob", string(reopened.get("users/2")));
+    }
+
+    public static void testReopenAfterDelete() {
+        String file = new File(TestSupport.tempDir(), "store.kv").getPath();
+        KeyValueStore store = new KeyValueStore(file);
+        store.put("users/1", bytes("alice"));
+        store.put("users/2", bytes("bob"));
+        store.delete("users/1");
+
+        KeyValueStore reopened = new KeyValueStore(file);
+        TestSupport.checkEquals(null, reopened.get("users/1"));
+        TestSupport.checkEquals("bob", string(reopened.get("users/2")));
+        TestSupport.checkEquals(1, reopened.keys("users/").size());
+    }
+
+    public static void testReopenAfterBatchWithTombstones() {
+        String file = new File(TestSupport.tempDir(), "store.kv").getPath();
+        KeyValueStore store = new KeyValueStore(file);
+        store.put("tracks/1", bytes("one"));
+        Map<String, byte[]> batch = new TreeMap<>();
+        batch.put("tracks/1", null);
+        batch.put("tracks/2", bytes("two"));
+        store.putAll(batch);
+
+        KeyValueStore reopened = new KeyValueStore(file);
+        TestSupport.checkEquals(null, reopened.get("tracks/1"));
+        TestSupport.checkEquals("two", string(reopened.get("tracks/2")));
+    }
+
+    public static void testTornBatchIsDiscardedWhole() throws Exception {
+        File file = new File(TestSupport.tempDir(), "store.kv");
+        KeyValueStore store = new KeyValueStore(file.getPath());
+        store.put("users/0", bytes("kept"));
+        long committed = file.length();
+        Map<String, byte[]> batch = new TreeMap<>();
+        batch.put("users/1", bytes("first"));
+        batch.put("users/2", bytes("second"));
+        store.putAll(batch);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 3);
+        }
+
+        KeyValueStore reopened = new KeyValueStore(file.getPath());
+        TestSupport.checkEquals("kept", string(reopened.get("users/0")));
+        TestSupport.checkEquals(null, reopened.get("users/1"));
+        TestSupport.checkEquals(null, reopened.get("users/2"));
+        TestSupport.checkEquals(committed, file.length());
+    }
+
+    public static void testCorruptRecordIsTruncated() throws Exception {
+        File file = new File(TestSupport.tempDir(), "store.kv");
+        KeyValueStore store = new KeyValueStore(file.getPath());
+        store.put("users/1", bytes("alice"));
+        long committed = file.length();
+        store.put("users/2", bytes("bob"));
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(raf.length() - 6);
+            raf.write('X');
+        }
+
+        KeyValueStore reopened = new KeyValueStore(file.getPath());
+        TestSupport.checkEquals("alice", string(reopened.get("users/1")));
+        TestSupport.checkEquals(null, reopened.get("users/2"));
+        TestSupport.checkEquals(committed, file.length());
+    }
+
+    public static void testCompactKeepsLiveRecords() {
+        String file = new File(TestSupport.tempDir(), "store.kv").getPath();
+        KeyValueStore store = new KeyValueStore(file);
+        for (int i = 0; i < 50; i++) {
+            store.put("users/" + i, bytes("v" + i));
+        }
+        for (int i = 0; i < 50; i += 2) {
+            store.delete("users/" + i);
+        }
+        store.compact();
+        store.put("users/100", bytes("after"));
+
+        KeyValueStore reopened = new KeyValueStore(file);
+        TestSupport.checkEquals(26, reopened.keys("users/").size());
+        TestSupport.checkEquals("v1", string(reopened.get("users/1")));
+        TestSupport.checkEquals(null, reopened.get("users/2"));
+        TestSupport.checkEquals("after", string(reopened.get("users/100")));
+    }
+}
@@ -0,0 +1,66 @@
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.util.List;
+import java.util.function.ToLongFunction;
+
+public class PageRequestTest {
+    private static final ToLongFunction<Long> ID = Long::longValue;
+    private static final List<Long> ITEMS = List.of(7L, 3L, 9L, 1L, 5L);
+
+    public static void main(String[] args) {
+        TestSupport.run(PageRequestTest.class);
+    }
+
+    private static PageRequest page(String json) {
+        return PageRequest.from(JsonParser.parseString(json).getAsJsonObject());
+    }
+
+    public static void testUnpagedReturnsSameList() {
+        PageRequest page = page("{}");
+        TestSupport.check(!page.isPaged(), "request without cursor or limit must not be paged");
+        TestSupport.check(page.slice(ITEMS, ID) == ITEMS, "unpaged slice must not copy the list");
+        JsonObject response = new JsonObject();
+        page.finish(ITEMS, ID, response);
+        TestSupport.check(!response.has("nextCursor"), "unpaged response must not carry a cursor");
+    }
+
+    public static void testCursorWalksAllPages() {
+        JsonObject response = new JsonObject();
+        PageRequest first = page("{\"limit\":2}");
+        TestSupport.checkEquals(List.of(1L, 3L), first.finish(first.slice(ITEMS, ID), ID, response));
+        TestSupport.checkEquals("3", response.get("nextCursor").getAsString());
+
+        response = new JsonObject();
+        PageRequest second = page("{\"limit\":2,\"cursor\":\"3\"}");
+        TestSupport.checkEquals(List.of(5L, 7L), second.finish(second.slice(ITEMS, ID), ID, response));
+        TestSupport.checkEquals("7", response.get("nextCursor").getAsString());
+
+        response = new JsonObject();
+        PageRequest last = page("{\"limit\":2,\"cursor\":\"7\"}");
+        TestSupport.checkEquals(List.of(9L), last.finish(last.slice(ITEMS, ID), ID, response));
+        TestSupport.check(response.get("nextCursor").isJsonNull(), "last page must end with a null cursor");
+    }
+
+    public static void testLimitIsClamped() {
+        TestSupport.checkEquals(1, page("{\"limit\":0}").getLimit());
+        TestSupport.checkEquals(200, page("{\"limit\":100000}").getLimit());
+        TestSupport.checkEquals(50, page("{\"cursor\":\"0\"}").getLimit());
+    }
+
+    public static void testMalformedCursorIsRejected() {
+        TestSupport.checkThrows(PageRequest.InvalidCursorException.class, () -> page("{\"cursor\":\"abc\"}"));
+        TestSupport.checkThrows(PageRequest.InvalidCursorException.class, () -> page("{\"cursor\":\"-4\"}"));
+        TestSupport.checkThrows(PageRequest.InvalidCursorException.class, () -> page("{\"cursor\":{}}"));
+    }
+
+    public static void testMalformedCursorIsReportedToClient() {
+        MusicManager musicManager = new MusicManager();
+        UserManager userManager = new UserManager();
+        userManager.setMusicManager(musicManager);
+        RequestHandeler handler = new RequestHandeler(userManager, musicManager);
+        JsonObject response = handler.respond(JsonParser.parseString(
+                "{\"action\":\"list_server_musics\",\"data\":{\"cursor\":\"abc\"}}").getAsJsonObject());
+        TestSupport.checkEquals("error", response.get("status").getAsString());
+        TestSupport.checkEquals("Invalid cursor: abc", response.get("message").getAsString());
+    }
+}
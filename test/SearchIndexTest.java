@@ -0,0 +1,67 @@
+import java.util.ArrayList;
+import java.util.List;
+
+public class SearchIndexTest {
+    private static final SearchIndex index = new SearchIndex();
+    private static final Music bohemian = add("Bohemian Rhapsody", "Queen");
+    private static final Music bohemia = add("Bohemia", "Someone");
+    private static final Music halo = add("Halo", "Beyoncé");
+    private static final Music queenly = add("Queenly Song", "Other");
+
+    public static void main(String[] args) {
+        TestSupport.run(SearchIndexTest.class);
+    }
+
+    private static Music add(String title, String artist) {
+        Music music = new Music(title, artist, title + ".mp3", "", false);
+        index.add(music, null);
+        return music;
+    }
+
+    private static List<Music> search(String query) {
+        List<Music> musics = new ArrayList<>();
+        for (SearchIndex.Hit hit : index.search(query, null, 10)) {
+            musics.add(hit.getMusic());
+        }
+        return musics;
+    }
+
+    public static void testPrefixMatchesAndExactRanksFirst() {
+        TestSupport.checkEquals(List.of(bohemia, bohemian), search("bohemia"));
+        TestSupport.checkEquals(List.of(bohemian), search("rhap"));
+    }
+
+    public static void testTitleOutranksArtist() {
+        TestSupport.checkEquals(List.of(queenly, bohemian), search("queen"));
+    }
+
+    public static void testAllQueryTokensMustMatch() {
+        TestSupport.checkEquals(List.of(bohemian), search("Queen Bohemian"));
+        TestSupport.checkEquals(List.of(), search("queen halo"));
+    }
+
+    public static void testAccentsAndCaseAreFolded() {
+        TestSupport.checkEquals(List.of(halo), search("BEYONCE"));
+    }
+
+    public static void testFuzzyMatchAllowsOneEdit() {
+        TestSupport.checkEquals(List.of(bohemian), search("rhapsdy"));
+        TestSupport.checkEquals(List.of(halo), search("beyonse"));
+        TestSupport.checkEquals(List.of(halo), search("hslo"));
+        TestSupport.checkEquals(List.of(), search("rapsdy"));
+    }
+
+    public static void testShortTokensAreNotFuzzyMatched() {
+        TestSupport.checkEquals(List.of(), search("hlo"));
+        TestSupport.checkEquals(List.of(), search("bhm"));
+    }
+
+    public static void testRemovedMusicIsNotFound() {
+        SearchIndex local = new SearchIndex();
+        Music music = new Music("Yesterday", "Beatles", "y.mp3", "", false);
+        local.add(music, null);
+        TestSupport.checkEquals(1, local.search("yester", null, 10).size());
+        local.remove(music.getId());
+        TestSupport.checkEquals(0, local.search("yester", null, 10).size());
+    }
+}
@@ -0,0 +1,77 @@
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Objects;
+
+public class TestSupport {
+    private TestSupport() {
+    }
+
+    public static void run(Class<?> testClass) {
+        int passed = 0;
+        int failed = 0;
+        Method[] methods = testClass.getDeclaredMethods();
+        Arrays.sort(methods, Comparator.comparing(Method::getName));
+        for (Method method : methods) {
+            if (!method.getName().startsWith("test") || !Modifier.isStatic(method.getModifiers())
+                    || method.getParameterCount() != 0) {
+                continue;
+            }
+            try {
+                method.invoke(null);
+                passed++;
+                System.out.println("PASS " + testClass.getSimpleName() + "." + method.getName());
+            } catch (InvocationTargetException e) {
+                failed++;
+                System.out.println("FAIL " + testClass.getSimpleName() + "." + method.getName() + ": " + e.getCause());
+                e.getCause().printStackTrace(System.out);
+            } catch (IllegalAccessException e) {
+                failed++;
+                System.out.println("FAIL " + testClass.getSimpleName() + "." + method.getName() + ": " + e);
+            }
+        }
+        System.out.println(testClass.getSimpleName() + ": " + passed + " passed, " + failed + " failed");
+        if (failed > 0) {
+            System.exit(1);
+        }
+    }
+
+    public static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+
+    public static void checkEquals(Object expected, Object actual) {
+        if (!Objects.equals(expected, actual)) {
+            throw new AssertionError("expected <" + expected + "> but was <" + actual + ">");
+        }
+    }
+
+    public static void checkThrows(Class<? extends Throwable> type, Runnable action) {
+        try {
+            action.run();
+        } catch (Throwable e) {
+            if (type.isInstance(e)) {
+                return;
+            }
+            throw new AssertionError("expected " + type.getSimpleName() + " but got " + e, e);
+        }
+        throw new AssertionError("expected " + type.getSimpleName() + " to be thrown");
+    }
+
+    public static File tempDir() {
+        try {
+            File dir = Files.createTempDirectory("backjadid-test").toFile();
+            dir.deleteOnExit();
+            return dir;
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
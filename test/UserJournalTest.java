@@ -0,0 +1,117 @@
+import com.google.gson.JsonObject;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class UserJournalTest {
+    public static void main(String[] args) {
+        TestSupport.run(UserJournalTest.class);
+    }
+
+    private static JsonObject record(int id) {
+        JsonObject record = new JsonObject();
+        record.addProperty("op", "put");
+        record.addProperty("id", id);
+        return record;
+    }
+
+    private static List<Integer> replayIds(String path) {
+        List<Integer> ids = new ArrayList<>();
+        UserJournal journal = new UserJournal(path);
+        journal.replay(record -> ids.add(record.get("id").getAsInt()));
+        journal.close();
+        return ids;
+    }
+
+    private static void appendRaw(File file, String text) throws IOException {
+        try (FileWriter writer = new FileWriter(file, true)) {
+            writer.write(text);
+        }
+    }
+
+    public static void testReplayReturnsAppendedRecordsInOrder() {
+        String path = new File(TestSupport.tempDir(), "users.log").getPath();
+        UserJournal journal = new UserJournal(path);
+        journal.append(List.of(record(1), record(2)));
+        journal.append(List.of(record(3)));
+        TestSupport.checkEquals(3, journal.getRecordCount());
+        journal.close();
+
+        TestSupport.checkEquals(List.of(1, 2, 3), replayIds(path));
+        UserJournal reopened = new UserJournal(path);
+        TestSupport.checkEquals(3, reopened.getRecordCount());
+        reopened.close();
+    }
+
+    public static void testTornTailIsTruncatedOnOpen() throws IOException {
+        File file = new File(TestSupport.tempDir(), "users.log");
+        UserJournal journal = new UserJournal(file.getPath());
+        journal.append(List.of(record(1), record(2)));
+        journal.close();
+        long committed = file.length();
+        appendRaw(file, "{\"op\":\"put\",\"id\":");
+
+        TestSupport.checkEquals(List.of(1, 2), replayIds(file.getPath()));
+        TestSupport.checkEquals(committed, file.length());
+
+        UserJournal reopened = new UserJournal(file.getPath());
+        reopened.append(List.of(record(3)));
+        reopened.close();
+        TestSupport.checkEquals(List.of(1, 2, 3), replayIds(file.getPath()));
+    }
+
+    public static void testUnparseableFinalLineIsTruncated() throws IOException {
+        File file = new File(TestSupport.tempDir(), "users.log");
+        UserJournal journal = new UserJournal(file.getPath());
+        journal.append(List.of(record(1)));
+        journal.close();
+        long committed = file.length();
+        appendRaw(file, "{\"op\":\"pu\u0000\u0000\n");
+
+        TestSupport.checkEquals(List.of(1), replayIds(file.getPath()));
+        TestSupport.checkEquals(committed, file.length());
+    }
+
+    public static void testCorruptionBeforeValidRecordsFails() throws IOException {
+        File file = new File(TestSupport.tempDir(), "users.log");
+        UserJournal journal = new UserJournal(file.getPath());
+        journal.append(List.of(record(1)));
+        journal.close();
+        appendRaw(file, "not json\n");
+        appendRaw(file, record(2) + "\n");
+        long length = file.length();
+
+        TestSupport.checkThrows(IllegalStateException.class, () -> new UserJournal(file.getPath()));
+        TestSupport.checkEquals(length, file.length());
+    }
+
+    public static void testCompactRunsSnapshotBeforeTruncating() {
+        File file = new File(TestSupport.tempDir(), "users.log");
+        UserJournal journal = new UserJournal(file.getPath());
+        journal.append(List.of(record(1), record(2)));
+        TestSupport.checkThrows(IllegalStateException.class, () -> journal.compact(() -> {
+            throw new IOException("disk full");
+        }));
+        TestSupport.checkEquals(2, journal.getRecordCount());
+
+        journal.compact(() -> { });
+        TestSupport.checkEquals(0, journal.getRecordCount());
+        TestSupport.checkEquals(0L, file.length());
+        journal.close();
+    }
+
+    public static void testCorruptSnapshotFailsToLoad() throws IOException {
+        File dir = TestSupport.tempDir();
+        try (FileWriter writer = new FileWriter(new File(dir, "users.json"))) {
+            writer.write("[{\"id\":1,\"email\":\"a@x\"");
+        }
+        JsonStorage storage = new JsonStorage(dir.getPath());
+        try {
+            TestSupport.checkThrows(IllegalStateException.class, storage::loadUsers);
+        } finally {
+            storage.close();
+        }
+    }
+}
@@ -0,0 +1,46 @@
+public class UserSyncTest {
+    public static void main(String[] args) {
+        TestSupport.run(UserSyncTest.class);
+    }
+
+    public static void testChangesSinceVersion() {
+        User user = new User("u", "p", "sync1@x");
+        user.recordChange(UserChange.PLAYLISTS, UserChange.UPSERT, 1);
+        user.recordChange(UserChange.PLAYLISTS, UserChange.UPSERT, 2);
+        user.recordChange(UserChange.LIKED_MUSICS, UserChange.REMOVE, 3);
+
+        TestSupport.checkEquals(3L, user.getVersion());
+        TestSupport.check(user.canSyncFrom(1), "version 1 should be incremental");
+        TestSupport.checkEquals(2, user.getChangesSince(1).size());
+        TestSupport.check(user.canSyncFrom(3), "current version should be in sync");
+        TestSupport.check(!user.canSyncFrom(4), "future version must reset");
+        TestSupport.check(!user.canSyncFrom(0), "version 0 must reset");
+    }
+
+    public static void testTrimmedLogForcesReset() {
+        User user = new User("u", "p", "sync2@x");
+        for (int i = 0; i < 300; i++) {
+            user.recordChange(UserChange.PLAYLISTS, UserChange.UPSERT, i);
+        }
+        TestSupport.check(!user.canSyncFrom(10), "trimmed versions must reset");
+        TestSupport.check(user.canSyncFrom(299), "recent versions stay incremental");
+    }
+
+    public static void testVersionsSeenBeforeReloadAreNeverReused() {
+        User user = new User("u", "p", "sync3@x");
+        user.recordChange(UserChange.PLAYLISTS, UserChange.UPSERT, 1);
+        long persisted = user.getVersion();
+        user.recordChange(UserChange.PLAYLISTS, UserChange.UPSERT, 2);
+        long lost = user.getVersion();
+
+        User reloaded = new User("u", "p", "sync3@x");
+        reloaded.recordChange(UserChange.PLAYLISTS, UserChange.UPSERT, 1);
+        TestSupport.checkEquals(persisted, reloaded.getVersion());
+        reloaded.startChangeLog();
+        TestSupport.check(!reloaded.canSyncFrom(persisted), "pre-reload version must reset");
+        TestSupport.check(!reloaded.canSyncFrom(lost), "lost version must reset");
+        reloaded.recordChange(UserChange.PLAYLISTS, UserChange.UPSERT, 5);
+        TestSupport.check(reloaded.getVersion() > lost, "new versions must not reuse lost ones");
+        TestSupport.check(!reloaded.canSyncFrom(lost), "lost version must still reset");
+    }
+}